@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOutboundHandler;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.traccar.config.Keys;
 import org.traccar.handler.ComputedAttributesHandler;
 import org.traccar.handler.CopyAttributesHandler;
@@ -56,6 +57,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
     private final TrackerServer server;
     private final String protocol;
     private int timeout;
+    private final EventExecutorGroup processingGroup;
 
     public BasePipelineFactory(TrackerServer server, String protocol) {
         this.server = server;
@@ -64,6 +66,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
         if (timeout == 0) {
             timeout = Context.getConfig().getInteger(Keys.SERVER_TIMEOUT);
         }
+        processingGroup = EventLoopGroupFactory.getProcessingGroup();
     }
 
     protected abstract void addProtocolHandlers(PipelineBuilder pipeline);
@@ -72,7 +75,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
     private final void addHandlers(ChannelPipeline pipeline, Class<? extends ChannelHandler>... handlerClasses) {
         for (Class<? extends ChannelHandler> handlerClass : handlerClasses) {
             if (handlerClass != null) {
-                pipeline.addLast(Main.getInjector().getInstance(handlerClass));
+                pipeline.addLast(processingGroup, Main.getInjector().getInstance(handlerClass));
             }
         }
     }
@@ -114,6 +117,10 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
             pipeline.addLast(handler);
         });
 
+        if (processingGroup != null) {
+            pipeline.addLast(new ProcessingExecutorGroup.OverloadHandler());
+        }
+
         addHandlers(
                 pipeline,
                 TimeHandler.class,
@@ -140,7 +147,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
                 MaintenanceEventHandler.class,
                 DriverEventHandler.class);
 
-        pipeline.addLast(new MainEventHandler());
+        pipeline.addLast(processingGroup, new MainEventHandler());
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -56,6 +56,7 @@ import org.traccar.model.Notification;
 import org.traccar.model.User;
 import org.traccar.notification.EventForwarder;
 import org.traccar.notification.NotificatorManager;
+import org.traccar.reports.ReportExecutor;
 import org.traccar.reports.model.TripsConfig;
 import org.traccar.schedule.ScheduleManager;
 import org.traccar.sms.HttpSmsClient;
@@ -241,6 +242,12 @@ public final class Context {
         return smsManager;
     }
 
+    private static ReportExecutor reportExecutor;
+
+    public static ReportExecutor getReportExecutor() {
+        return reportExecutor;
+    }
+
     private static TripsConfig tripsConfig;
 
     public static TripsConfig getTripsConfig() {
@@ -316,6 +323,8 @@ public final class Context {
 
         tripsConfig = initTripsConfig();
 
+        reportExecutor = new ReportExecutor(config);
+
         if (config.hasKey(Keys.SMS_HTTP_URL)) {
             smsManager = new HttpSmsClient();
         } else if (config.hasKey(Keys.SMS_AWS_REGION)) {
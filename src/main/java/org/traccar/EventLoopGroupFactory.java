@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,23 +15,126 @@
  */
 package org.traccar;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
 
 public final class EventLoopGroupFactory {
 
-    private static EventLoopGroup bossGroup = new NioEventLoopGroup();
-    private static EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoopGroupFactory.class);
+
+    private static boolean epoll;
+    private static EventLoopGroup bossGroup;
+    private static EventLoopGroup workerGroup;
+    private static ByteBufAllocator allocator;
+    private static EventExecutorGroup processingGroup;
 
     private EventLoopGroupFactory() {
     }
 
+    private static synchronized void init() {
+        if (bossGroup != null) {
+            return;
+        }
+
+        Config config = Context.getConfig();
+        String transport = config != null ? config.getString(Keys.SERVER_TRANSPORT) : "nio";
+        int bossThreads = config != null ? config.getInteger(Keys.SERVER_BOSS_THREADS) : 0;
+        int workerThreads = config != null ? config.getInteger(Keys.SERVER_WORKER_THREADS) : 0;
+
+        if (!transport.equals("nio")) {
+            epoll = Epoll.isAvailable();
+            if (!epoll && transport.equals("epoll")) {
+                LOGGER.warn("Native epoll transport is not available", Epoll.unavailabilityCause());
+            }
+        }
+
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(bossThreads);
+            workerGroup = new EpollEventLoopGroup(workerThreads);
+        } else {
+            bossGroup = new NioEventLoopGroup(bossThreads);
+            workerGroup = new NioEventLoopGroup(workerThreads);
+        }
+
+        String allocatorType = config != null ? config.getString(Keys.SERVER_ALLOCATOR) : null;
+        if (allocatorType != null) {
+            switch (allocatorType) {
+                case "pooled":
+                    allocator = new PooledByteBufAllocator(true);
+                    break;
+                case "heap":
+                    allocator = new PooledByteBufAllocator(false);
+                    break;
+                case "unpooled":
+                    allocator = new UnpooledByteBufAllocator(true);
+                    break;
+                default:
+                    LOGGER.warn("Unknown allocator type {}", allocatorType);
+                    break;
+            }
+        }
+        if (allocator == null) {
+            allocator = ByteBufAllocator.DEFAULT;
+        }
+
+        int processingThreads = config != null ? config.getInteger(Keys.SERVER_PROCESSING_THREADS) : 0;
+        if (processingThreads > 0) {
+            processingGroup = new ProcessingExecutorGroup(
+                    processingThreads, config.getInteger(Keys.SERVER_PROCESSING_QUEUE),
+                    config.getString(Keys.SERVER_PROCESSING_OVERLOAD_POLICY).equals("wait"));
+        }
+    }
+
+    public static boolean isEpoll() {
+        init();
+        return epoll;
+    }
+
     public static EventLoopGroup getBossGroup() {
+        init();
         return bossGroup;
     }
 
     public static EventLoopGroup getWorkerGroup() {
+        init();
         return workerGroup;
     }
 
+    public static ByteBufAllocator getAllocator() {
+        init();
+        return allocator;
+    }
+
+    /**
+     * Executor group for handlers after protocol decoding or {@code null} if they run on the network event loop.
+     */
+    public static EventExecutorGroup getProcessingGroup() {
+        init();
+        return processingGroup;
+    }
+
+    public static Class<? extends ServerSocketChannel> getServerChannelClass() {
+        return isEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return isEpoll() ? EpollDatagramChannel.class : NioDatagramChannel.class;
+    }
+
 }
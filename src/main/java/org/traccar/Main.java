@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,11 @@ import com.google.inject.Injector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.api.HealthCheckService;
+import org.traccar.geocoder.Geocoder;
+import org.traccar.geocoder.JsonGeocoder;
+import org.traccar.handler.DefaultDataHandler;
+import org.traccar.speedlimit.SpeedLimitProvider;
+import org.traccar.speedlimit.TileSpeedLimitProvider;
 
 import java.io.File;
 import java.lang.management.ManagementFactory;
@@ -141,6 +146,26 @@ public final class Main {
                     Context.getWebServer().stop();
                 }
                 Context.getServerManager().stop();
+
+                DefaultDataHandler defaultDataHandler = injector.getInstance(DefaultDataHandler.class);
+                if (defaultDataHandler != null) {
+                    defaultDataHandler.stop();
+                }
+                if (Context.getNotificationManager() != null) {
+                    Context.getNotificationManager().stop();
+                }
+                if (Context.getDeviceManager() != null) {
+                    Context.getDeviceManager().flushUpdates();
+                }
+
+                Geocoder geocoder = injector.getInstance(Geocoder.class);
+                if (geocoder instanceof JsonGeocoder) {
+                    ((JsonGeocoder) geocoder).close();
+                }
+                SpeedLimitProvider speedLimitProvider = injector.getInstance(SpeedLimitProvider.class);
+                if (speedLimitProvider instanceof TileSpeedLimitProvider) {
+                    ((TileSpeedLimitProvider) speedLimitProvider).close();
+                }
             }));
         } catch (Exception e) {
             LOGGER.error("Main method error", e);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2018 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import org.traccar.api.LoginCache;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.database.AttributesManager;
@@ -77,9 +78,13 @@ import org.traccar.reports.model.TripsConfig;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.client.Client;
+import java.io.IOException;
 import io.netty.util.Timer;
+import org.traccar.speedlimit.FileSpeedLimitTileSource;
 import org.traccar.speedlimit.OverpassSpeedLimitProvider;
 import org.traccar.speedlimit.SpeedLimitProvider;
+import org.traccar.speedlimit.SpeedLimitTileSource;
+import org.traccar.speedlimit.TileSpeedLimitProvider;
 
 public class MainModule extends AbstractModule {
 
@@ -138,6 +143,12 @@ public class MainModule extends AbstractModule {
         return Context.getMaintenancesManager();
     }
 
+    @Singleton
+    @Provides
+    public static LoginCache provideLoginCache(Config config) {
+        return new LoginCache(config);
+    }
+
     @Singleton
     @Provides
     public static StatisticsManager provideStatisticsManager(
@@ -217,15 +228,32 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static SpeedLimitProvider provideSpeedLimitProvider(Config config) {
+    public static SpeedLimitProvider provideSpeedLimitProvider(Config config) throws IOException {
         if (config.getBoolean(Keys.SPEED_LIMIT_ENABLE)) {
-            String type = config.getString(Keys.SPEED_LIMIT_TYPE, "overpass");
-            String url = config.getString(Keys.SPEED_LIMIT_URL);
-            switch (type) {
-                case "overpass":
-                default:
-                    return new OverpassSpeedLimitProvider(url);
+            int cacheSize = config.getInteger(Keys.SPEED_LIMIT_CACHE_SIZE);
+            SpeedLimitTileSource tileSource;
+            if (config.hasKey(Keys.SPEED_LIMIT_FILE)) {
+                tileSource = new FileSpeedLimitTileSource(config.getString(Keys.SPEED_LIMIT_FILE));
+                cacheSize = Math.max(cacheSize, 1);
+            } else {
+                String type = config.getString(Keys.SPEED_LIMIT_TYPE, "overpass");
+                String url = config.getString(Keys.SPEED_LIMIT_URL);
+                OverpassSpeedLimitProvider speedLimitProvider;
+                switch (type) {
+                    case "overpass":
+                    default:
+                        speedLimitProvider = new OverpassSpeedLimitProvider(url);
+                        break;
+                }
+                if (cacheSize <= 0) {
+                    return speedLimitProvider;
+                }
+                tileSource = speedLimitProvider;
             }
+            return new TileSpeedLimitProvider(
+                    tileSource, cacheSize, config.getDouble(Keys.SPEED_LIMIT_TILE_SIZE),
+                    config.getLong(Keys.SPEED_LIMIT_CACHE_TIMEOUT) * 1000,
+                    config.getString(Keys.SPEED_LIMIT_CACHE_FILE));
         }
         return null;
     }
@@ -238,9 +266,9 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static FilterHandler provideFilterHandler(Config config) {
+    public static FilterHandler provideFilterHandler(Config config, StatisticsManager statisticsManager) {
         if (config.getBoolean(Keys.FILTER_ENABLE)) {
-            return new FilterHandler(config);
+            return new FilterHandler(config, statisticsManager);
         }
         return null;
     }
@@ -286,18 +314,20 @@ public class MainModule extends AbstractModule {
     @Singleton
     @Provides
     public static GeocoderHandler provideGeocoderHandler(
-            Config config, @Nullable Geocoder geocoder, IdentityManager identityManager) {
+            Config config, @Nullable Geocoder geocoder, IdentityManager identityManager,
+            StatisticsManager statisticsManager) {
         if (geocoder != null) {
-            return new GeocoderHandler(config, geocoder, identityManager);
+            return new GeocoderHandler(config, geocoder, identityManager, statisticsManager);
         }
         return null;
     }
 
     @Singleton
     @Provides
-    public static SpeedLimitHandler provideSpeedLimitHandler(@Nullable SpeedLimitProvider speedLimitProvider) {
+    public static SpeedLimitHandler provideSpeedLimitHandler(
+            Config config, @Nullable SpeedLimitProvider speedLimitProvider, StatisticsManager statisticsManager) {
         if (speedLimitProvider != null) {
-            return new SpeedLimitHandler(speedLimitProvider);
+            return new SpeedLimitHandler(config, speedLimitProvider, statisticsManager);
         }
         return null;
     }
@@ -329,9 +359,10 @@ public class MainModule extends AbstractModule {
     @Singleton
     @Provides
     public static ComputedAttributesHandler provideComputedAttributesHandler(
-            Config config, IdentityManager identityManager, AttributesManager attributesManager) {
+            Config config, IdentityManager identityManager, AttributesManager attributesManager,
+            StatisticsManager statisticsManager) {
         if (config.getBoolean(Keys.PROCESSING_COMPUTED_ATTRIBUTES_ENABLE)) {
-            return new ComputedAttributesHandler(config, identityManager, attributesManager);
+            return new ComputedAttributesHandler(config, identityManager, attributesManager, statisticsManager);
         }
         return null;
     }
@@ -347,9 +378,10 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static DefaultDataHandler provideDefaultDataHandler(@Nullable DataManager dataManager) {
+    public static DefaultDataHandler provideDefaultDataHandler(
+            Config config, @Nullable DataManager dataManager, StatisticsManager statisticsManager) {
         if (dataManager != null) {
-            return new DefaultDataHandler(dataManager);
+            return new DefaultDataHandler(config, dataManager, statisticsManager);
         }
         return null;
     }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.RejectedExecutionHandler;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.database.StatisticsManager;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor group for handlers that run after protocol decoding. Netty binds each channel to a single executor from
+ * the group, so messages from one connection are still processed sequentially and in order. Queue and processing
+ * times are reported in microseconds as processing.queueTime and processing.handlerTime metrics.
+ * <p>
+ * Messages rejected by a full queue are released and counted by {@link OverloadHandler}, which has to be added to
+ * the pipeline on the I/O thread right before the first handler running in this group.
+ */
+public class ProcessingExecutorGroup extends DefaultEventExecutorGroup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessingExecutorGroup.class);
+
+    private static final int WAIT_RETRIES = 100;
+    private static final long WAIT_DELAY = 10;
+    private static final long WARNING_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private static final RejectedExecutionException QUEUE_FULL =
+            new RejectedExecutionException("Processing queue is full");
+
+    static {
+        QUEUE_FULL.setStackTrace(new StackTraceElement[0]);
+    }
+
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final AtomicLong LAST_WARNING = new AtomicLong();
+
+    private static StatisticsManager statisticsManager;
+
+    public ProcessingExecutorGroup(int threads, int queue, boolean wait) {
+        super(threads, new DefaultThreadFactory("processing"), queue, createRejectedHandler(wait));
+    }
+
+    private static RejectedExecutionHandler createRejectedHandler(boolean wait) {
+        if (wait) {
+            return RejectedExecutionHandlers.backoff(WAIT_RETRIES, WAIT_DELAY, TimeUnit.MILLISECONDS);
+        } else {
+            return (task, executor) -> {
+                throw QUEUE_FULL;
+            };
+        }
+    }
+
+    private static void messageDropped() {
+        registerMetric("processing.dropped", 1);
+        DROPPED.incrementAndGet();
+        long currentTime = System.currentTimeMillis();
+        long lastWarning = LAST_WARNING.get();
+        if (currentTime - lastWarning >= WARNING_INTERVAL && LAST_WARNING.compareAndSet(lastWarning, currentTime)) {
+            LOGGER.warn("Processing queue is full, {} messages dropped", DROPPED.getAndSet(0));
+        }
+    }
+
+    private static void registerMetric(String key, long value) {
+        if (statisticsManager == null && Main.getInjector() != null) {
+            statisticsManager = Main.getInjector().getInstance(StatisticsManager.class);
+        }
+        if (statisticsManager != null) {
+            statisticsManager.registerMetric(key, value);
+        }
+    }
+
+    private static final class ProcessingExecutor extends SingleThreadEventExecutor {
+
+        private ProcessingExecutor(
+                EventExecutorGroup parent, Executor executor, int queue, RejectedExecutionHandler rejectedHandler) {
+            super(parent, executor, true, queue, rejectedHandler);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            long queueTime = System.nanoTime();
+            super.execute(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    long endTime = System.nanoTime();
+                    registerMetric("processing.queueTime", (startTime - queueTime) / 1000);
+                    registerMetric("processing.handlerTime", (endTime - startTime) / 1000);
+                }
+            });
+        }
+
+        @Override
+        protected void run() {
+            while (true) {
+                Runnable task = takeTask();
+                if (task != null) {
+                    task.run();
+                    updateLastExecutionTime();
+                }
+                if (confirmShutdown()) {
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Drops messages that the processing group rejects, so the rejection never reaches handlers on the I/O thread.
+     */
+    public static final class OverloadHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                ctx.fireChannelRead(msg);
+            } catch (RejectedExecutionException e) {
+                ReferenceCountUtil.release(msg);
+                messageDropped();
+            }
+        }
+
+    }
+
+    @Override
+    protected EventExecutor newChild(Executor executor, Object... args) {
+        return new ProcessingExecutor(this, executor, (Integer) args[0], (RejectedExecutionHandler) args[1]);
+    }
+
+}
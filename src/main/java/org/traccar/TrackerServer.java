@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,11 +19,14 @@ import io.netty.bootstrap.AbstractBootstrap;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.MultithreadEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.GlobalEventExecutor;
+import org.traccar.config.Config;
 import org.traccar.config.Keys;
 
 import java.net.InetSocketAddress;
@@ -32,6 +35,7 @@ public abstract class TrackerServer {
 
     private final boolean datagram;
     private final AbstractBootstrap bootstrap;
+    private int bindCount = 1;
 
     public boolean isDatagram() {
         return datagram;
@@ -50,20 +54,59 @@ public abstract class TrackerServer {
             }
         };
 
+        Config config = Context.getConfig();
+        WriteBufferWaterMark waterMark = null;
+        int writeBufferLow = config.getInteger(Keys.PROTOCOL_WRITE_BUFFER_LOW.withPrefix(protocol));
+        int writeBufferHigh = config.getInteger(Keys.PROTOCOL_WRITE_BUFFER_HIGH.withPrefix(protocol));
+        if (writeBufferLow > 0 && writeBufferHigh > 0) {
+            waterMark = new WriteBufferWaterMark(writeBufferLow, writeBufferHigh);
+        }
+
         if (datagram) {
 
-            this.bootstrap = new Bootstrap()
+            Bootstrap bootstrap = new Bootstrap()
                     .group(EventLoopGroupFactory.getWorkerGroup())
-                    .channel(NioDatagramChannel.class)
+                    .channel(EventLoopGroupFactory.getDatagramChannelClass())
+                    .option(ChannelOption.ALLOCATOR, EventLoopGroupFactory.getAllocator())
                     .handler(pipelineFactory);
 
+            if (waterMark != null) {
+                bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+            }
+            if (EventLoopGroupFactory.isEpoll() && config.getBoolean(Keys.PROTOCOL_REUSE_PORT.withPrefix(protocol))) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+                bindCount = ((MultithreadEventLoopGroup) EventLoopGroupFactory.getWorkerGroup()).executorCount();
+            }
+
+            this.bootstrap = bootstrap;
+
         } else {
 
-            this.bootstrap = new ServerBootstrap()
+            ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(EventLoopGroupFactory.getBossGroup(), EventLoopGroupFactory.getWorkerGroup())
-                    .channel(NioServerSocketChannel.class)
+                    .channel(EventLoopGroupFactory.getServerChannelClass())
+                    .option(ChannelOption.ALLOCATOR, EventLoopGroupFactory.getAllocator())
+                    .childOption(ChannelOption.ALLOCATOR, EventLoopGroupFactory.getAllocator())
                     .childHandler(pipelineFactory);
 
+            int backlog = config.getInteger(Keys.PROTOCOL_BACKLOG.withPrefix(protocol));
+            if (backlog > 0) {
+                bootstrap.option(ChannelOption.SO_BACKLOG, backlog);
+            }
+            if (config.hasKey(Keys.PROTOCOL_NO_DELAY.withPrefix(protocol))) {
+                bootstrap.childOption(
+                        ChannelOption.TCP_NODELAY, config.getBoolean(Keys.PROTOCOL_NO_DELAY.withPrefix(protocol)));
+            }
+            if (config.hasKey(Keys.PROTOCOL_KEEP_ALIVE.withPrefix(protocol))) {
+                bootstrap.childOption(
+                        ChannelOption.SO_KEEPALIVE, config.getBoolean(Keys.PROTOCOL_KEEP_ALIVE.withPrefix(protocol)));
+            }
+            if (waterMark != null) {
+                bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+            }
+
+            this.bootstrap = bootstrap;
+
         }
     }
 
@@ -103,9 +146,11 @@ public abstract class TrackerServer {
             endpoint = new InetSocketAddress(address, port);
         }
 
-        Channel channel = bootstrap.bind(endpoint).sync().channel();
-        if (channel != null) {
-            getChannelGroup().add(channel);
+        for (int i = 0; i < bindCount; i++) {
+            Channel channel = bootstrap.bind(endpoint).sync().channel();
+            if (channel != null) {
+                getChannelGroup().add(channel);
+            }
         }
     }
 
@@ -16,20 +16,30 @@
 package org.traccar.api;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import org.apache.commons.collections4.map.AbstractReferenceMap;
+import org.apache.commons.collections4.map.ReferenceIdentityMap;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.GlobalTimer;
+import org.traccar.Main;
+import org.traccar.config.Keys;
 import org.traccar.database.ConnectionManager;
+import org.traccar.database.StatisticsManager;
 import org.traccar.model.Device;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.UpdateListener {
 
@@ -39,10 +49,33 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
     private static final String KEY_POSITIONS = "positions";
     private static final String KEY_EVENTS = "events";
 
+    private static final int JSON_CACHE_STRIPES = 32;
+
+    /**
+     * Serialized positions and events shared between sessions, because the same object is usually sent to many
+     * users. Devices are not cached because cached device objects are updated in place. The cache is striped by
+     * identity hash and serialization happens outside of the stripe lock, so concurrent flushes rarely contend.
+     */
+    private static final List<Map<Object, String>> JSON_CACHE = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < JSON_CACHE_STRIPES; i++) {
+            JSON_CACHE.add(Collections.synchronizedMap(new ReferenceIdentityMap<>(
+                    AbstractReferenceMap.ReferenceStrength.WEAK, AbstractReferenceMap.ReferenceStrength.HARD)));
+        }
+    }
+
     private final long userId;
+    private final long window;
+
+    private final Map<Long, Device> devices = new LinkedHashMap<>();
+    private final Map<Long, Position> positions = new LinkedHashMap<>();
+    private final List<Event> events = new ArrayList<>();
+    private boolean scheduled;
 
     public AsyncSocket(long userId) {
         this.userId = userId;
+        this.window = Context.getConfig().getLong(Keys.WEB_SOCKET_WINDOW);
     }
 
     @Override
@@ -65,28 +98,117 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
 
     @Override
     public void onKeepalive() {
+        synchronized (this) {
+            if (scheduled) {
+                return;
+            }
+        }
         sendData(new HashMap<>());
     }
 
     @Override
     public void onUpdateDevice(Device device) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_DEVICES, Collections.singletonList(device));
-        sendData(data);
+        synchronized (this) {
+            devices.put(device.getId(), device);
+        }
+        scheduleFlush();
     }
 
     @Override
     public void onUpdatePosition(Position position) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_POSITIONS, Collections.singletonList(position));
-        sendData(data);
+        synchronized (this) {
+            positions.put(position.getDeviceId(), position);
+        }
+        scheduleFlush();
     }
 
     @Override
     public void onUpdateEvent(Event event) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_EVENTS, Collections.singletonList(event));
-        sendData(data);
+        synchronized (this) {
+            events.add(event);
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (window > 0) {
+            synchronized (this) {
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            GlobalTimer.getTimer().newTimeout(
+                    timeout -> Context.getConnectionManager().getListenerExecutor().execute(this::flush),
+                    window, TimeUnit.MILLISECONDS);
+        } else {
+            flush();
+        }
+    }
+
+    private static String toJson(Object object, boolean shared) throws JsonProcessingException {
+        if (shared) {
+            Map<Object, String> cache =
+                    JSON_CACHE.get(Math.floorMod(System.identityHashCode(object), JSON_CACHE_STRIPES));
+            String json = cache.get(object);
+            if (json == null) {
+                json = Context.getObjectMapper().writeValueAsString(object);
+                cache.put(object, json);
+            }
+            return json;
+        } else {
+            return Context.getObjectMapper().writeValueAsString(object);
+        }
+    }
+
+    private static void appendArray(
+            StringBuilder buffer, String key, Collection<?> items, boolean shared) throws JsonProcessingException {
+        if (!items.isEmpty()) {
+            if (buffer.length() > 1) {
+                buffer.append(',');
+            }
+            buffer.append('"').append(key).append("\":[");
+            boolean first = true;
+            for (Object item : items) {
+                if (!first) {
+                    buffer.append(',');
+                }
+                buffer.append(toJson(item, shared));
+                first = false;
+            }
+            buffer.append(']');
+        }
+    }
+
+    private void flush() {
+        List<Device> pendingDevices;
+        List<Position> pendingPositions;
+        List<Event> pendingEvents;
+        synchronized (this) {
+            scheduled = false;
+            pendingDevices = new ArrayList<>(devices.values());
+            pendingPositions = new ArrayList<>(positions.values());
+            pendingEvents = new ArrayList<>(events);
+            devices.clear();
+            positions.clear();
+            events.clear();
+        }
+        int count = pendingDevices.size() + pendingPositions.size() + pendingEvents.size();
+        if (count > 0 && isConnected()) {
+            try {
+                StringBuilder buffer = new StringBuilder("{");
+                appendArray(buffer, KEY_DEVICES, pendingDevices, false);
+                appendArray(buffer, KEY_POSITIONS, pendingPositions, true);
+                appendArray(buffer, KEY_EVENTS, pendingEvents, true);
+                buffer.append('}');
+                getRemote().sendString(buffer.toString(), null);
+                if (Main.getInjector() != null) {
+                    Main.getInjector().getInstance(StatisticsManager.class).registerMetric("socket.updates", count);
+                }
+            } catch (JsonProcessingException e) {
+                LOGGER.warn("Socket JSON formatting error", e);
+            }
+        }
     }
 
     private void sendData(Map<String, Collection<?>> data) {
@@ -23,13 +23,18 @@ import org.traccar.config.Keys;
 
 import javax.servlet.http.HttpSession;
 import java.time.Duration;
+import java.util.Collections;
 
 public class AsyncSocketServlet extends JettyWebSocketServlet {
 
     @Override
     public void configure(JettyWebSocketServletFactory factory) {
         factory.setIdleTimeout(Duration.ofMillis(Context.getConfig().getLong(Keys.WEB_TIMEOUT)));
+        boolean compression = Context.getConfig().getBoolean(Keys.WEB_SOCKET_COMPRESSION);
         factory.setCreator((req, resp) -> {
+            if (!compression) {
+                resp.setExtensions(Collections.emptyList());
+            }
             if (req.getSession() != null) {
                 long userId = (Long) ((HttpSession) req.getSession()).getAttribute(SessionResource.USER_ID_KEY);
                 return new AsyncSocket(userId);
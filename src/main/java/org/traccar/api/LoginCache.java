@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.api;
+
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of verified HTTP Basic credentials. Entries are keyed by HMAC of the authorization header with a random key
+ * generated on startup, so credentials are never stored in memory in plain form.
+ */
+public class LoginCache {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final class Entry {
+
+        private final long userId;
+        private final long expiration;
+
+        private Entry(long userId, long expiration) {
+            this.userId = userId;
+            this.expiration = expiration;
+        }
+
+    }
+
+    private final boolean enabled;
+    private final long timeout;
+    private final Map<String, Entry> entries;
+    private final ThreadLocal<Mac> mac;
+
+    public LoginCache(Config config) {
+        int size = config.getInteger(Keys.WEB_AUTH_CACHE_SIZE);
+        timeout = config.getLong(Keys.WEB_AUTH_CACHE_TIMEOUT) * 1000;
+        enabled = size > 0 && timeout > 0;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > size;
+            }
+        };
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        SecretKeySpec keySpec = new SecretKeySpec(secret, ALGORITHM);
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(ALGORITHM);
+                instance.init(keySpec);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private String getKey(String authorization) {
+        return Base64.getEncoder().encodeToString(mac.get().doFinal(authorization.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns user id for cached credentials or 0 if there is no valid entry.
+     */
+    public long getUserId(String authorization) {
+        if (!enabled) {
+            return 0;
+        }
+        String key = getKey(authorization);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiration > System.currentTimeMillis()) {
+                    return entry.userId;
+                }
+                entries.remove(key);
+            }
+        }
+        return 0;
+    }
+
+    public void put(String authorization, long userId) {
+        if (!enabled) {
+            return;
+        }
+        String key = getKey(authorization);
+        synchronized (entries) {
+            entries.put(key, new Entry(userId, System.currentTimeMillis() + timeout));
+        }
+    }
+
+    public void invalidate(long userId) {
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.userId == userId);
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.traccar.Context;
+import org.traccar.database.PositionSource;
+import org.traccar.helper.DateUtil;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Date;
+
+/**
+ * Writes positions to the response while they are being read from the database, so the memory usage doesn't depend
+ * on the number of positions.
+ */
+public class PositionStreamingOutput implements StreamingOutput {
+
+    public static final String CSV = "text/csv";
+    public static final String GPX = "application/gpx+xml";
+
+    private final String format;
+    private final PositionSource source;
+
+    public PositionStreamingOutput(String format, PositionSource source) {
+        this.format = format;
+        this.source = source;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        try {
+            switch (format) {
+                case CSV:
+                    writeCsv(outputStream);
+                    break;
+                case GPX:
+                    writeGpx(outputStream);
+                    break;
+                default:
+                    writeJson(outputStream);
+                    break;
+            }
+        } catch (SQLException | XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeJson(OutputStream outputStream) throws IOException, SQLException {
+        ObjectWriter writer = Context.getObjectMapper()
+                .writerFor(Position.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = Context.getObjectMapper().getFactory().createGenerator(outputStream)) {
+            generator.writeStartArray();
+            source.read(position -> writer.writeValue(generator, position));
+            generator.writeEndArray();
+        }
+    }
+
+    private static String formatDate(Date date) {
+        return date != null ? DateUtil.formatDate(date) : "";
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        } else if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private void writeCsv(OutputStream outputStream) throws IOException, SQLException {
+        ObjectWriter attributesWriter = Context.getObjectMapper().writer();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            writer.write("id,deviceId,protocol,serverTime,deviceTime,fixTime,valid,"
+                    + "latitude,longitude,altitude,speed,course,address,accuracy,attributes\n");
+            source.read(position -> {
+                writer.write(String.valueOf(position.getId()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getDeviceId()));
+                writer.write(',');
+                writer.write(escapeCsv(position.getProtocol()));
+                writer.write(',');
+                writer.write(formatDate(position.getServerTime()));
+                writer.write(',');
+                writer.write(formatDate(position.getDeviceTime()));
+                writer.write(',');
+                writer.write(formatDate(position.getFixTime()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getValid()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getLatitude()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getLongitude()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getAltitude()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getSpeed()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getCourse()));
+                writer.write(',');
+                writer.write(escapeCsv(position.getAddress()));
+                writer.write(',');
+                writer.write(String.valueOf(position.getAccuracy()));
+                writer.write(',');
+                writer.write(escapeCsv(attributesWriter.writeValueAsString(position.getAttributes())));
+                writer.write('\n');
+            });
+        }
+    }
+
+    private void writeGpx(OutputStream outputStream) throws IOException, SQLException, XMLStreamException {
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("gpx");
+        writer.writeDefaultNamespace("http://www.topografix.com/GPX/1/1");
+        writer.writeAttribute("version", "1.1");
+        writer.writeAttribute("creator", "Traccar");
+        long[] currentDeviceId = new long[1];
+        try {
+            source.read(position -> {
+                try {
+                    if (position.getDeviceId() != currentDeviceId[0]) {
+                        if (currentDeviceId[0] != 0) {
+                            writer.writeEndElement();
+                            writer.writeEndElement();
+                        }
+                        currentDeviceId[0] = position.getDeviceId();
+                        writer.writeStartElement("trk");
+                        Device device = Context.getIdentityManager().getById(position.getDeviceId());
+                        if (device != null && device.getName() != null) {
+                            writer.writeStartElement("name");
+                            writer.writeCharacters(device.getName());
+                            writer.writeEndElement();
+                        }
+                        writer.writeStartElement("trkseg");
+                    }
+                    writer.writeStartElement("trkpt");
+                    writer.writeAttribute("lat", String.valueOf(position.getLatitude()));
+                    writer.writeAttribute("lon", String.valueOf(position.getLongitude()));
+                    writer.writeStartElement("ele");
+                    writer.writeCharacters(String.valueOf(position.getAltitude()));
+                    writer.writeEndElement();
+                    writer.writeStartElement("time");
+                    writer.writeCharacters(formatDate(position.getFixTime()));
+                    writer.writeEndElement();
+                    writer.writeEndElement();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+            });
+            if (currentDeviceId[0] != 0) {
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -61,6 +61,34 @@ public class SecurityRequestFilter implements ContainerRequestFilter {
     @javax.ws.rs.core.Context
     private ResourceInfo resourceInfo;
 
+    private long login(String authHeader) {
+        LoginCache loginCache = Main.getInjector().getInstance(LoginCache.class);
+        StatisticsManager statisticsManager = Main.getInjector().getInstance(StatisticsManager.class);
+
+        long userId = loginCache.getUserId(authHeader);
+        if (userId != 0) {
+            Context.getPermissionsManager().checkUserEnabled(userId);
+            statisticsManager.registerMetric("login.cache.hits", 1);
+            return userId;
+        }
+        statisticsManager.registerMetric("login.cache.misses", 1);
+
+        long startTime = System.currentTimeMillis();
+        try {
+            String[] auth = decodeBasicAuth(authHeader);
+            User user = Context.getPermissionsManager().login(auth[0], auth[1]);
+            if (user != null) {
+                loginCache.put(authHeader, user.getId());
+                return user.getId();
+            }
+            return 0;
+        } catch (SQLException e) {
+            throw new WebApplicationException(e);
+        } finally {
+            statisticsManager.registerMetric("login.latency", System.currentTimeMillis() - startTime);
+        }
+    }
+
     @Override
     public void filter(ContainerRequestContext requestContext) {
 
@@ -75,15 +103,10 @@ public class SecurityRequestFilter implements ContainerRequestFilter {
             String authHeader = requestContext.getHeaderString(AUTHORIZATION_HEADER);
             if (authHeader != null) {
 
-                try {
-                    String[] auth = decodeBasicAuth(authHeader);
-                    User user = Context.getPermissionsManager().login(auth[0], auth[1]);
-                    if (user != null) {
-                        Main.getInjector().getInstance(StatisticsManager.class).registerRequest(user.getId());
-                        securityContext = new UserSecurityContext(new UserPrincipal(user.getId()));
-                    }
-                } catch (SQLException e) {
-                    throw new WebApplicationException(e);
+                long userId = login(authHeader);
+                if (userId != 0) {
+                    Main.getInjector().getInstance(StatisticsManager.class).registerRequest(userId);
+                    securityContext = new UserSecurityContext(new UserPrincipal(userId));
                 }
 
             } else if (request.getSession() != null) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 - 2018 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -40,9 +40,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
 import org.traccar.api.BaseResource;
+import org.traccar.api.PositionStreamingOutput;
 import org.traccar.helper.LogAction;
 import org.traccar.model.Event;
-import org.traccar.model.Position;
+import org.traccar.notification.MessageException;
+import org.traccar.notification.NotificationDispatcher;
 import org.traccar.reports.Events;
 import org.traccar.reports.Summary;
 import org.traccar.reports.Trips;
@@ -70,22 +72,29 @@ public class ReportResource extends BaseResource {
             long userId, boolean mail, ReportExecutor executor) throws SQLException, IOException {
         final ByteArrayOutputStream stream = new ByteArrayOutputStream();
         if (mail) {
-            new Thread(() -> {
+            NotificationDispatcher dispatcher = Context.getNotificatorManager().getDispatcher("report");
+            dispatcher.dispatch(() -> {
                 try {
                     executor.execute(stream);
-
-                    MimeBodyPart attachment = new MimeBodyPart();
-
-                    attachment.setFileName("report.xlsx");
-                    attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(
-                            stream.toByteArray(), "application/octet-stream")));
-
-                    Context.getMailManager().sendMessage(
-                            userId, "Report", "The report is in the attachment.", attachment);
-                } catch (SQLException | IOException | MessagingException e) {
+                } catch (SQLException | IOException e) {
                     LOGGER.warn("Report failed", e);
+                    return;
                 }
-            }).start();
+                dispatcher.dispatch(() -> {
+                    try {
+                        MimeBodyPart attachment = new MimeBodyPart();
+
+                        attachment.setFileName("report.xlsx");
+                        attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(
+                                stream.toByteArray(), "application/octet-stream")));
+
+                        Context.getMailManager().sendMessage(
+                                userId, "Report", "The report is in the attachment.", attachment);
+                    } catch (MessagingException e) {
+                        throw new MessageException(e);
+                    }
+                });
+            });
             return Response.noContent().build();
         } else {
             executor.execute(stream);
@@ -94,13 +103,37 @@ public class ReportResource extends BaseResource {
         }
     }
 
+    private Response getRoute(
+            String format, List<Long> deviceIds, List<Long> groupIds, Date from, Date to) throws SQLException {
+        LogAction.logReport(getUserId(), "route", from, to, deviceIds, groupIds);
+        return Response.ok(new PositionStreamingOutput(
+                format, Route.getObjects(getUserId(), deviceIds, groupIds, from, to))).build();
+    }
+
     @Path("route")
     @GET
-    public Collection<Position> getRoute(
+    public Response getRoute(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
-        LogAction.logReport(getUserId(), "route", from, to, deviceIds, groupIds);
-        return Route.getObjects(getUserId(), deviceIds, groupIds, from, to);
+        return getRoute(MediaType.APPLICATION_JSON, deviceIds, groupIds, from, to);
+    }
+
+    @Path("route")
+    @GET
+    @Produces(PositionStreamingOutput.CSV)
+    public Response getRouteCsv(
+            @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
+            @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
+        return getRoute(PositionStreamingOutput.CSV, deviceIds, groupIds, from, to);
+    }
+
+    @Path("route")
+    @GET
+    @Produces(PositionStreamingOutput.GPX)
+    public Response getRouteGpx(
+            @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
+            @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
+        return getRoute(PositionStreamingOutput.GPX, deviceIds, groupIds, from, to);
     }
 
     @Path("route")
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,7 +16,10 @@
 package org.traccar.api.resource;
 
 import org.traccar.Context;
+import org.traccar.Main;
 import org.traccar.api.BaseResource;
+import org.traccar.database.StatisticsManager;
+import org.traccar.model.Metric;
 import org.traccar.model.Statistics;
 
 import javax.ws.rs.Consumes;
@@ -28,6 +31,7 @@ import javax.ws.rs.core.MediaType;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 @Path("statistics")
 @Produces(MediaType.APPLICATION_JSON)
@@ -41,4 +45,11 @@ public class StatisticsResource extends BaseResource {
         return Context.getDataManager().getStatistics(from, to);
     }
 
+    @Path("metrics")
+    @GET
+    public Map<String, Metric> getMetrics() {
+        Context.getPermissionsManager().checkAdmin(getUserId());
+        return Main.getInjector().getInstance(StatisticsManager.class).getMetrics();
+    }
+
 }
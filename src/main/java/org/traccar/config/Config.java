@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -90,7 +90,13 @@ public class Config {
     }
 
     public boolean getBoolean(ConfigKey<Boolean> key) {
-        return getBoolean(key.getKey());
+        String value = getString(key.getKey());
+        if (value != null) {
+            return Boolean.parseBoolean(value);
+        } else {
+            Boolean defaultValue = key.getDefaultValue();
+            return defaultValue != null && defaultValue;
+        }
     }
 
     @Deprecated
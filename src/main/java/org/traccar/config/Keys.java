@@ -175,6 +175,49 @@ public final class Keys {
             ".ignoreSessionCache",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Maximum queue length for incoming TCP connections (SO_BACKLOG). By default operating system value is used.
+     */
+    public static final ConfigSuffix<Integer> PROTOCOL_BACKLOG = new ConfigSuffix<>(
+            ".backlog",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Disable Nagle's algorithm (TCP_NODELAY) for device connections. Netty enables it by default.
+     */
+    public static final ConfigSuffix<Boolean> PROTOCOL_NO_DELAY = new ConfigSuffix<>(
+            ".noDelay",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Enable TCP keepalive (SO_KEEPALIVE) for device connections.
+     */
+    public static final ConfigSuffix<Boolean> PROTOCOL_KEEP_ALIVE = new ConfigSuffix<>(
+            ".keepAlive",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Write buffer low water mark in bytes. Channel becomes writable again when pending data drops below this value.
+     */
+    public static final ConfigSuffix<Integer> PROTOCOL_WRITE_BUFFER_LOW = new ConfigSuffix<>(
+            ".writeBufferLow",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Write buffer high water mark in bytes. Channel becomes unwritable when pending data exceeds this value.
+     */
+    public static final ConfigSuffix<Integer> PROTOCOL_WRITE_BUFFER_HIGH = new ConfigSuffix<>(
+            ".writeBufferHigh",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Enable SO_REUSEPORT for UDP protocols. With native epoll transport it binds one socket per worker thread to the
+     * same port, so datagrams are processed by multiple event loops. Ignored with NIO transport.
+     */
+    public static final ConfigSuffix<Boolean> PROTOCOL_REUSE_PORT = new ConfigSuffix<>(
+            ".reusePort",
+            Collections.singletonList(KeyType.GLOBAL));
+
     /**
      * Skip device connection session cache. Global configuration.
      */
@@ -189,6 +232,70 @@ public final class Keys {
             "server.timeout",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Network transport for device connections. Available values:
+     * - auto - native epoll if available, otherwise NIO (default)
+     * - epoll - native epoll, falls back to NIO if native library can't be loaded
+     * - nio - Java NIO
+     */
+    public static final ConfigKey<String> SERVER_TRANSPORT = new ConfigKey<>(
+            "server.transport",
+            Collections.singletonList(KeyType.GLOBAL),
+            "auto");
+
+    /**
+     * Number of threads accepting TCP connections. By default Netty uses twice the number of CPU cores.
+     */
+    public static final ConfigKey<Integer> SERVER_BOSS_THREADS = new ConfigKey<>(
+            "server.bossThreads",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Number of threads handling device connections. By default Netty uses twice the number of CPU cores.
+     */
+    public static final ConfigKey<Integer> SERVER_WORKER_THREADS = new ConfigKey<>(
+            "server.workerThreads",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Buffer allocator for device connections. Available values:
+     * - pooled - pooled direct buffers
+     * - heap - pooled heap buffers
+     * - unpooled - unpooled buffers
+     * By default Netty allocator is used.
+     */
+    public static final ConfigKey<String> SERVER_ALLOCATOR = new ConfigKey<>(
+            "server.allocator",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Number of threads for processing decoded messages. By default handlers after protocol decoder are executed on
+     * the network event loop, so any blocking call there (e.g. database query) delays all connections served by the
+     * same loop. With non-zero value processing is moved to a separate thread pool. Messages from one connection are
+     * always processed by the same thread, so the order is preserved.
+     */
+    public static final ConfigKey<Integer> SERVER_PROCESSING_THREADS = new ConfigKey<>(
+            "server.processingThreads",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Maximum number of pending messages per processing thread.
+     */
+    public static final ConfigKey<Integer> SERVER_PROCESSING_QUEUE = new ConfigKey<>(
+            "server.processingQueue",
+            Collections.singletonList(KeyType.GLOBAL),
+            10000);
+
+    /**
+     * What to do when processing queue is full. Available values:
+     * - wait - network thread waits for up to a second before dropping the message
+     * - drop - message is dropped immediately
+     */
+    public static final ConfigKey<String> SERVER_PROCESSING_OVERLOAD_POLICY = new ConfigKey<>(
+            "server.processingOverloadPolicy",
+            Collections.singletonList(KeyType.GLOBAL),
+            "wait");
+
     /**
      * Address for uploading aggregated anonymous usage statistics. Uploaded information is the same you can see on the
      * statistics screen in the web app. It does not include any sensitive (e.g. locations).
@@ -366,6 +473,62 @@ public final class Keys {
             "database.saveEmpty",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Maximum number of positions written to the database in a single batch. By default positions are stored one by
+     * one as they are received. Setting a positive value enables write-behind mode, where positions and events are
+     * queued and inserted in batches. Notifications are sent after events are committed. Database driver has to return
+     * generated keys for batch inserts. For MySQL it's also recommended to add "rewriteBatchedStatements=true" to the
+     * connection URL.
+     */
+    public static final ConfigKey<Integer> DATABASE_BATCH_SIZE = new ConfigKey<>(
+            "database.batchSize",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Maximum delay in milliseconds before incomplete batch is written to the database. Default value is 100.
+     */
+    public static final ConfigKey<Long> DATABASE_BATCH_DELAY = new ConfigKey<>(
+            "database.batchDelay",
+            Collections.singletonList(KeyType.GLOBAL),
+            100L);
+
+    /**
+     * Number of independent batch queues. Each queue has its own writer thread and database connection. Positions
+     * from the same device always go to the same queue. Default value is 2.
+     */
+    public static final ConfigKey<Integer> DATABASE_BATCH_SHARDS = new ConfigKey<>(
+            "database.batchShards",
+            Collections.singletonList(KeyType.GLOBAL),
+            2);
+
+    /**
+     * Capacity of each batch queue. When a queue is full, network threads wait for the writer, which slows down
+     * reading from device connections. Default value is 10000.
+     */
+    public static final ConfigKey<Integer> DATABASE_BATCH_QUEUE = new ConfigKey<>(
+            "database.batchQueue",
+            Collections.singletonList(KeyType.GLOBAL),
+            10000);
+
+    /**
+     * Interval in milliseconds for writing device status and latest position changes to the database. Cached devices
+     * are always up to date, database rows are updated in batches only with the latest values. Value 0 updates the
+     * database on every message. Default value is 5000.
+     */
+    public static final ConfigKey<Long> DATABASE_DEVICE_UPDATE_INTERVAL = new ConfigKey<>(
+            "database.deviceUpdateInterval",
+            Collections.singletonList(KeyType.GLOBAL),
+            5000L);
+
+    /**
+     * Number of rows fetched from the database at once when positions are streamed to API clients. Default value is
+     * 1000. Note that MySQL driver requires "useCursorFetch=true" in the connection URL to respect fetch size.
+     */
+    public static final ConfigKey<Integer> DATABASE_FETCH_SIZE = new ConfigKey<>(
+            "database.fetchSize",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000);
+
     /**
      * Device limit for self registered users. Default value is -1, which indicates no limit.
      */
@@ -553,6 +716,59 @@ public final class Keys {
             "web.origin",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Time window in milliseconds for combining live updates into a single WebSocket message. Only the latest
+     * position for each device is sent. Set to 0 to send every update immediately.
+     */
+    public static final ConfigKey<Long> WEB_SOCKET_WINDOW = new ConfigKey<>(
+            "web.socketWindow",
+            Collections.singletonList(KeyType.GLOBAL),
+            250L);
+
+    /**
+     * Enable WebSocket per-message compression (permessage-deflate) if client supports it. Enabled by default.
+     */
+    public static final ConfigKey<Boolean> WEB_SOCKET_COMPRESSION = new ConfigKey<>(
+            "web.socketCompression",
+            Collections.singletonList(KeyType.GLOBAL),
+            true);
+
+    /**
+     * Number of threads delivering live updates to WebSocket clients. Each client has its own queue, so a slow
+     * client doesn't delay updates for other clients or position processing.
+     */
+    public static final ConfigKey<Integer> WEB_LISTENER_THREADS = new ConfigKey<>(
+            "web.listenerThreads",
+            Collections.singletonList(KeyType.GLOBAL),
+            2);
+
+    /**
+     * Maximum number of pending events per WebSocket client. Device and position updates are coalesced, so only the
+     * latest update per device is kept. When the limit is reached, the oldest pending event is dropped.
+     */
+    public static final ConfigKey<Integer> WEB_LISTENER_QUEUE = new ConfigKey<>(
+            "web.listenerQueue",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000);
+
+    /**
+     * Maximum number of cached HTTP Basic authentication results. Cached credentials skip the database query and
+     * password hashing for subsequent requests. Value 0 disables the cache. Default value is 1000.
+     */
+    public static final ConfigKey<Integer> WEB_AUTH_CACHE_SIZE = new ConfigKey<>(
+            "web.authCacheSize",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000);
+
+    /**
+     * Time in seconds for which successful HTTP Basic authentication is cached. Cache entries for a user are removed
+     * earlier if the password, disabled flag or expiration time of the user changes. Default value is 60 seconds.
+     */
+    public static final ConfigKey<Long> WEB_AUTH_CACHE_TIMEOUT = new ConfigKey<>(
+            "web.authCacheTimeout",
+            Collections.singletonList(KeyType.GLOBAL),
+            60L);
+
     /**
      * Cache control header value. By default resources are cached for one hour.
      */
@@ -765,6 +981,76 @@ public final class Keys {
             "notificator.telegram.sendLocation",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Number of worker threads sending notifications for each notificator type. Value can be overridden for a
+     * specific type using 'notificator.{type}.threads' key.
+     */
+    public static final ConfigKey<Integer> NOTIFICATOR_THREADS = new ConfigKey<>(
+            "notificator.threads",
+            Collections.singletonList(KeyType.GLOBAL),
+            4);
+
+    /**
+     * Number of worker threads for a specific notificator type. If not specified, 'notificator.threads' is used.
+     */
+    public static final ConfigSuffix<Integer> NOTIFICATOR_TYPE_THREADS = new ConfigSuffix<>(
+            ".threads",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Maximum number of notifications waiting to be sent for each notificator type. Notifications above the limit are
+     * dropped. Value can be overridden using 'notificator.{type}.queue' key.
+     */
+    public static final ConfigKey<Integer> NOTIFICATOR_QUEUE = new ConfigKey<>(
+            "notificator.queue",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000);
+
+    /**
+     * Queue size for a specific notificator type. If not specified, 'notificator.queue' is used.
+     */
+    public static final ConfigSuffix<Integer> NOTIFICATOR_TYPE_QUEUE = new ConfigSuffix<>(
+            ".queue",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Maximum number of notifications sent per second for each notificator type. By default there is no limit. Value
+     * can be overridden using 'notificator.{type}.rateLimit' key.
+     */
+    public static final ConfigKey<Integer> NOTIFICATOR_RATE_LIMIT = new ConfigKey<>(
+            "notificator.rateLimit",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Rate limit for a specific notificator type. If not specified, 'notificator.rateLimit' is used.
+     */
+    public static final ConfigSuffix<Integer> NOTIFICATOR_TYPE_RATE_LIMIT = new ConfigSuffix<>(
+            ".rateLimit",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Number of retries for failed notifications. Value can be overridden using 'notificator.{type}.retries' key.
+     */
+    public static final ConfigKey<Integer> NOTIFICATOR_RETRIES = new ConfigKey<>(
+            "notificator.retries",
+            Collections.singletonList(KeyType.GLOBAL),
+            3);
+
+    /**
+     * Number of retries for a specific notificator type. If not specified, 'notificator.retries' is used.
+     */
+    public static final ConfigSuffix<Integer> NOTIFICATOR_TYPE_RETRIES = new ConfigSuffix<>(
+            ".retries",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Delay before the first notification retry in milliseconds. Delay is doubled for each following attempt.
+     */
+    public static final ConfigKey<Long> NOTIFICATOR_RETRY_DELAY = new ConfigKey<>(
+            "notificator.retryDelay",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000L);
+
     /**
      * Maximum time period for reports in seconds. Can be useful to prevent users to request unreasonably long reports.
      * By default there is no limit.
@@ -773,6 +1059,31 @@ public final class Keys {
             "report.periodLimit",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Number of threads used to calculate reports for multiple devices in parallel. Each thread holds a database
+     * connection while loading device data, so by default half of the database connection pool is used. Value of 1
+     * processes devices sequentially.
+     */
+    public static final ConfigKey<Integer> REPORT_THREADS = new ConfigKey<>(
+            "report.threads",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Maximum number of devices processed in parallel for a single user across all running reports. Default value is 2.
+     */
+    public static final ConfigKey<Integer> REPORT_USER_THREADS = new ConfigKey<>(
+            "report.userThreads",
+            Collections.singletonList(KeyType.GLOBAL),
+            2);
+
+    /**
+     * Maintain hourly position rollups in the background and use them for the summary report. Only positions at the
+     * report period boundaries are loaded from the database when enabled.
+     */
+    public static final ConfigKey<Boolean> REPORT_SUMMARY_STORE = new ConfigKey<>(
+            "report.summary.store",
+            Collections.singletonList(KeyType.GLOBAL));
+
     /**
      * Trips less than minimal duration and minimal distance are ignored. 300 seconds and 500 meters are default.
      */
@@ -812,6 +1123,24 @@ public final class Keys {
             "report.trip.useIgnition",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Store detected trips and stops in the database. Detection runs periodically in the background for closed trips
+     * and stops, and reports read stored rows instead of processing all positions. When trip configuration changes,
+     * stored rows are rebuilt automatically.
+     */
+    public static final ConfigKey<Boolean> REPORT_TRIP_STORE = new ConfigKey<>(
+            "report.trip.store",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Number of days of history processed when trips and stops are stored for the first time or rebuilt after a
+     * configuration change. Reports for older periods are calculated from positions. Default value is 30 days.
+     */
+    public static final ConfigKey<Long> REPORT_TRIP_STORE_BACKFILL = new ConfigKey<>(
+            "report.trip.storeBackfill",
+            Collections.singletonList(KeyType.GLOBAL),
+            30L);
+
     /**
      * Boolean flag to enable or disable position filtering.
      */
@@ -1040,6 +1369,30 @@ public final class Keys {
             "geocoder.cacheSize",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Number of decimal places of coordinates used for geocoder cache lookups. Positions that fall into the same cell
+     * share cached address. Default value is 4, which is roughly 10 meters.
+     */
+    public static final ConfigKey<Integer> GEOCODER_CACHE_PRECISION = new ConfigKey<>(
+            "geocoder.cachePrecision",
+            Collections.singletonList(KeyType.GLOBAL),
+            4);
+
+    /**
+     * Geocoder cache entry expiration time in seconds. By default cached addresses never expire.
+     */
+    public static final ConfigKey<Long> GEOCODER_CACHE_TIMEOUT = new ConfigKey<>(
+            "geocoder.cacheTimeout",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Optional file for persistent geocoder cache. Addresses stored in the file survive server restarts and are not
+     * limited by the in-memory cache size.
+     */
+    public static final ConfigKey<String> GEOCODER_CACHE_FILE = new ConfigKey<>(
+            "geocoder.cacheFile",
+            Collections.singletonList(KeyType.GLOBAL));
+
     /**
      * Disable automatic reverse geocoding requests for all positions.
      */
@@ -1143,6 +1496,82 @@ public final class Keys {
             "speedLimit.url",
             Collections.singletonList(KeyType.GLOBAL));
 
+    /**
+     * Number of speed limit tiles kept in memory. Each tile is loaded with a single request and contains all roads
+     * with a speed limit inside it. Value 0 disables tile cache and sends a request for every position.
+     */
+    public static final ConfigKey<Integer> SPEED_LIMIT_CACHE_SIZE = new ConfigKey<>(
+            "speedLimit.cacheSize",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000);
+
+    /**
+     * Speed limit tile size in degrees. Default value is 0.01, which is roughly 1 kilometer.
+     */
+    public static final ConfigKey<Double> SPEED_LIMIT_TILE_SIZE = new ConfigKey<>(
+            "speedLimit.tileSize",
+            Collections.singletonList(KeyType.GLOBAL),
+            0.01);
+
+    /**
+     * Speed limit tile expiration time in seconds. Default value is one week.
+     */
+    public static final ConfigKey<Long> SPEED_LIMIT_CACHE_TIMEOUT = new ConfigKey<>(
+            "speedLimit.cacheTimeout",
+            Collections.singletonList(KeyType.GLOBAL),
+            604800L);
+
+    /**
+     * Optional file for persistent speed limit tile cache.
+     */
+    public static final ConfigKey<String> SPEED_LIMIT_CACHE_FILE = new ConfigKey<>(
+            "speedLimit.cacheFile",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Offline speed limit data in Overpass JSON format (result of a "way[maxspeed]" query with "out geom"). If set,
+     * speed limits are taken from the file instead of the remote API.
+     */
+    public static final ConfigKey<String> SPEED_LIMIT_FILE = new ConfigKey<>(
+            "speedLimit.file",
+            Collections.singletonList(KeyType.GLOBAL));
+
+    /**
+     * Maximum number of concurrent lookups for each enrichment stage (geocoder, geolocation and speed limit).
+     */
+    public static final ConfigKey<Integer> ENRICHMENT_MAX_REQUESTS = new ConfigKey<>(
+            "enrichment.maxRequests",
+            Collections.singletonList(KeyType.GLOBAL),
+            1000);
+
+    /**
+     * Maximum number of concurrent lookups for a single device in each enrichment stage.
+     */
+    public static final ConfigKey<Integer> ENRICHMENT_MAX_DEVICE_REQUESTS = new ConfigKey<>(
+            "enrichment.maxDeviceRequests",
+            Collections.singletonList(KeyType.GLOBAL),
+            10);
+
+    /**
+     * Maximum number of lookups waiting for a free slot when overload policy is 'wait'. When the queue is full, new
+     * positions are passed through without enrichment.
+     */
+    public static final ConfigKey<Integer> ENRICHMENT_QUEUE = new ConfigKey<>(
+            "enrichment.queue",
+            Collections.singletonList(KeyType.GLOBAL),
+            10000);
+
+    /**
+     * Enrichment overload policy. Used when the number of concurrent lookups reaches the limit. Available values:
+     * - wait - queue lookup until one of the running lookups completes
+     * - skip - pass position without enrichment
+     * - drop - discard position
+     */
+    public static final ConfigKey<String> ENRICHMENT_OVERLOAD_POLICY = new ConfigKey<>(
+            "enrichment.overloadPolicy",
+            Collections.singletonList(KeyType.GLOBAL),
+            "wait");
+
     /**
      * Override latitude sign / hemisphere. Useful in cases where value is incorrect because of device bug. Value can be
      * N for North or S for South.
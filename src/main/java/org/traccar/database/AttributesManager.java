@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -20,10 +20,34 @@ import org.traccar.model.Attribute;
 
 public class AttributesManager extends ExtendedObjectManager<Attribute> {
 
+    private volatile long revision;
+
     public AttributesManager(DataManager dataManager) {
         super(dataManager, Attribute.class);
     }
 
+    /**
+     * Revision changes every time any attribute is added, updated or removed.
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    private void incrementRevision() {
+        try {
+            writeLock();
+            revision += 1;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    protected void addNewItem(Attribute attribute) {
+        super.addNewItem(attribute);
+        incrementRevision();
+    }
+
     @Override
     public void updateCachedItem(Attribute attribute) {
         Attribute cachedAttribute = getById(attribute.getId());
@@ -31,6 +55,13 @@ public class AttributesManager extends ExtendedObjectManager<Attribute> {
         cachedAttribute.setAttribute(attribute.getAttribute());
         cachedAttribute.setExpression(attribute.getExpression());
         cachedAttribute.setType(attribute.getType());
+        incrementRevision();
+    }
+
+    @Override
+    protected void removeCachedItem(long attributeId) {
+        super.removeCachedItem(attributeId);
+        incrementRevision();
     }
 
 }
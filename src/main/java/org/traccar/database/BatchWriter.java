@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.model.BaseModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue that inserts objects in batches. Objects are distributed between shards by key, so objects with
+ * the same key are always written in the order they were submitted. Callbacks are called after the batch is written
+ * and generated ids are assigned.
+ */
+public class BatchWriter<T extends BaseModel> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+
+    public interface Callback {
+        void onComplete(boolean success);
+    }
+
+    private static final class Entry<T> {
+        private final T object;
+        private final Callback callback;
+
+        private Entry(T object, Callback callback) {
+            this.object = object;
+            this.callback = callback;
+        }
+    }
+
+    private final DataManager dataManager;
+    private final StatisticsManager statisticsManager;
+    private final String name;
+    private final int batchSize;
+    private final long delay;
+    private final List<Shard> shards = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    public BatchWriter(
+            DataManager dataManager, StatisticsManager statisticsManager, String name,
+            int batchSize, long delay, int shardCount, int queueCapacity) {
+        this.dataManager = dataManager;
+        this.statisticsManager = statisticsManager;
+        this.name = name;
+        this.batchSize = batchSize;
+        this.delay = delay;
+        for (int i = 0; i < Math.max(shardCount, 1); i++) {
+            Shard shard = new Shard(queueCapacity);
+            shard.thread.setName("batch-" + name + "-" + i);
+            shard.thread.setDaemon(true);
+            shard.thread.start();
+            shards.add(shard);
+        }
+    }
+
+    public void write(long key, T object, Callback callback) throws InterruptedException {
+        Shard shard = shards.get((int) Math.floorMod(key, (long) shards.size()));
+        Entry<T> entry = new Entry<>(object, callback);
+        if (!running) {
+            shard.flush(Collections.singletonList(entry));
+            return;
+        }
+        if (!shard.queue.offer(entry)) {
+            long start = System.currentTimeMillis();
+            shard.queue.put(entry);
+            registerMetric("blocked", System.currentTimeMillis() - start);
+        }
+        if (!running && shard.queue.remove(entry)) {
+            // shard thread might have already exited, so the entry would never be written
+            shard.flush(Collections.singletonList(entry));
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void registerMetric(String key, long value) {
+        if (statisticsManager != null) {
+            statisticsManager.registerMetric("batch." + name + "." + key, value);
+        }
+    }
+
+    private final class Shard implements Runnable {
+
+        private final BlockingQueue<Entry<T>> queue;
+        private final Thread thread = new Thread(this);
+
+        private Shard(int queueCapacity) {
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        @Override
+        public void run() {
+            List<Entry<T>> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Entry<T> first = queue.poll(delay, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.currentTimeMillis() + delay;
+                    while (batch.size() < batchSize) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        Entry<T> entry = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+                        if (entry == null) {
+                            break;
+                        }
+                        batch.add(entry);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                } catch (InterruptedException e) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+        }
+
+        private void flush(List<Entry<T>> batch) {
+            List<T> objects = new ArrayList<>(batch.size());
+            for (Entry<T> entry : batch) {
+                objects.add(entry.object);
+            }
+            long start = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                dataManager.addObjects(objects);
+                success = true;
+            } catch (Exception error) {
+                LOGGER.warn("Failed to store batch", error);
+            }
+            registerMetric("size", batch.size());
+            registerMetric("flushTime", System.currentTimeMillis() - start);
+            registerMetric("queue", queue.size());
+            for (Entry<T> entry : batch) {
+                try {
+                    entry.callback.onComplete(success);
+                } catch (RuntimeException error) {
+                    LOGGER.warn("Batch callback error", error);
+                }
+            }
+        }
+
+    }
+
+}
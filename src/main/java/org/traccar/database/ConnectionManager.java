@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,11 +16,11 @@
 package org.traccar.database;
 
 import io.netty.channel.Channel;
-import io.netty.util.Timeout;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
-import org.traccar.GlobalTimer;
 import org.traccar.Main;
 import org.traccar.Protocol;
 import org.traccar.config.Keys;
@@ -33,40 +33,92 @@ import org.traccar.model.Position;
 
 import java.net.SocketAddress;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConnectionManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionManager.class);
 
+    /**
+     * Ids of active devices using the channel, so the devices can be found without scanning all active devices when
+     * the channel is closed. Multiplexed connections can carry more than one device.
+     */
+    private static final AttributeKey<Set<Long>> DEVICE_IDS_KEY =
+            AttributeKey.valueOf(ConnectionManager.class, "deviceIds");
+
     private final long deviceTimeout;
     private final boolean updateDeviceState;
+    private final int listenerQueueSize;
+    private final ExecutorService listenerExecutor;
 
     private final Map<Long, ActiveDevice> activeDevices = new ConcurrentHashMap<>();
-    private final Map<Long, Set<UpdateListener>> listeners = new ConcurrentHashMap<>();
-    private final Map<Long, Timeout> timeouts = new ConcurrentHashMap<>();
+    private final Map<Long, Map<UpdateListener, ListenerQueue>> listeners = new ConcurrentHashMap<>();
+    private final Map<Long, Long> onlineDevices = new ConcurrentHashMap<>();
 
     public ConnectionManager() {
         deviceTimeout = Context.getConfig().getLong(Keys.STATUS_TIMEOUT) * 1000;
         updateDeviceState = Context.getConfig().getBoolean(Keys.STATUS_UPDATE_DEVICE_STATE);
+        listenerQueueSize = Context.getConfig().getInteger(Keys.WEB_LISTENER_QUEUE);
+        AtomicInteger threadIndex = new AtomicInteger();
+        listenerExecutor = Executors.newFixedThreadPool(
+                Context.getConfig().getInteger(Keys.WEB_LISTENER_THREADS), runnable -> {
+                    Thread thread = new Thread(runnable, "listener-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Executor that delivers listener updates. Listeners can use it for their own deferred work to keep it off
+     * timer threads.
+     */
+    public Executor getListenerExecutor() {
+        return listenerExecutor;
     }
 
     public void addActiveDevice(long deviceId, Protocol protocol, Channel channel, SocketAddress remoteAddress) {
-        activeDevices.put(deviceId, new ActiveDevice(deviceId, protocol, channel, remoteAddress));
+        ActiveDevice activeDevice = new ActiveDevice(deviceId, protocol, channel, remoteAddress);
+        ActiveDevice previous = activeDevices.put(deviceId, activeDevice);
+        if (previous != null && previous.getChannel() != null && previous.getChannel() != channel) {
+            Set<Long> deviceIds = previous.getChannel().attr(DEVICE_IDS_KEY).get();
+            if (deviceIds != null) {
+                deviceIds.remove(deviceId);
+            }
+        }
+        if (channel != null) {
+            Attribute<Set<Long>> attribute = channel.attr(DEVICE_IDS_KEY);
+            Set<Long> deviceIds = attribute.get();
+            if (deviceIds == null) {
+                Set<Long> newDeviceIds = ConcurrentHashMap.newKeySet();
+                deviceIds = attribute.setIfAbsent(newDeviceIds);
+                if (deviceIds == null) {
+                    deviceIds = newDeviceIds;
+                }
+            }
+            deviceIds.add(deviceId);
+        }
     }
 
     public void removeActiveDevice(Channel channel) {
-        for (ActiveDevice activeDevice : activeDevices.values()) {
-            if (activeDevice.getChannel() == channel) {
-                updateDevice(activeDevice.getDeviceId(), Device.STATUS_OFFLINE, null);
-                activeDevices.remove(activeDevice.getDeviceId());
-                break;
+        Set<Long> deviceIds = channel.attr(DEVICE_IDS_KEY).getAndSet(null);
+        if (deviceIds != null) {
+            for (long deviceId : deviceIds) {
+                ActiveDevice activeDevice = activeDevices.get(deviceId);
+                if (activeDevice != null && activeDevice.getChannel() == channel
+                        && activeDevices.remove(deviceId, activeDevice)) {
+                    updateDevice(deviceId, Device.STATUS_OFFLINE, null);
+                }
             }
         }
     }
@@ -108,21 +160,14 @@ public class ConnectionManager {
             Context.getNotificationManager().updateEvents(events);
         }
 
-        Timeout timeout = timeouts.remove(deviceId);
-        if (timeout != null) {
-            timeout.cancel();
-        }
-
         if (time != null) {
             device.setLastUpdate(time);
         }
 
         if (status.equals(Device.STATUS_ONLINE)) {
-            timeouts.put(deviceId, GlobalTimer.getTimer().newTimeout(timeout1 -> {
-                if (!timeout1.isCancelled()) {
-                    updateDevice(deviceId, Device.STATUS_UNKNOWN, null);
-                }
-            }, deviceTimeout, TimeUnit.MILLISECONDS));
+            onlineDevices.put(deviceId, System.currentTimeMillis());
+        } else {
+            onlineDevices.remove(deviceId);
         }
 
         try {
@@ -134,6 +179,18 @@ public class ConnectionManager {
         updateDevice(device);
     }
 
+    /**
+     * Change status of online devices that have not reported anything within the status timeout to unknown.
+     */
+    public void checkDeviceTimeouts() {
+        long threshold = System.currentTimeMillis() - deviceTimeout;
+        for (Map.Entry<Long, Long> entry : onlineDevices.entrySet()) {
+            if (entry.getValue() < threshold && onlineDevices.remove(entry.getKey(), entry.getValue())) {
+                updateDevice(entry.getKey(), Device.STATUS_UNKNOWN, null);
+            }
+        }
+    }
+
     public Map<Event, Position> updateDeviceState(long deviceId) {
         DeviceState deviceState = Context.getDeviceManager().getDeviceState(deviceId);
         Map<Event, Position> result = new HashMap<>();
@@ -154,40 +211,43 @@ public class ConnectionManager {
         return result;
     }
 
-    public synchronized void sendKeepalive() {
-        for (Set<UpdateListener> userListeners : listeners.values()) {
-            for (UpdateListener listener : userListeners) {
-                listener.onKeepalive();
+    public void sendKeepalive() {
+        for (Map<UpdateListener, ListenerQueue> userListeners : listeners.values()) {
+            for (ListenerQueue queue : userListeners.values()) {
+                queue.addKeepalive();
             }
         }
     }
 
-    public synchronized void updateDevice(Device device) {
+    public void updateDevice(Device device) {
         for (long userId : Context.getPermissionsManager().getDeviceUsers(device.getId())) {
-            if (listeners.containsKey(userId)) {
-                for (UpdateListener listener : listeners.get(userId)) {
-                    listener.onUpdateDevice(device);
+            Map<UpdateListener, ListenerQueue> userListeners = listeners.get(userId);
+            if (userListeners != null) {
+                for (ListenerQueue queue : userListeners.values()) {
+                    queue.addDevice(device);
                 }
             }
         }
     }
 
-    public synchronized void updatePosition(Position position) {
+    public void updatePosition(Position position) {
         long deviceId = position.getDeviceId();
 
         for (long userId : Context.getPermissionsManager().getDeviceUsers(deviceId)) {
-            if (listeners.containsKey(userId)) {
-                for (UpdateListener listener : listeners.get(userId)) {
-                    listener.onUpdatePosition(position);
+            Map<UpdateListener, ListenerQueue> userListeners = listeners.get(userId);
+            if (userListeners != null) {
+                for (ListenerQueue queue : userListeners.values()) {
+                    queue.addPosition(position);
                 }
             }
         }
     }
 
-    public synchronized void updateEvent(long userId, Event event) {
-        if (listeners.containsKey(userId)) {
-            for (UpdateListener listener : listeners.get(userId)) {
-                listener.onUpdateEvent(event);
+    public void updateEvent(long userId, Event event) {
+        Map<UpdateListener, ListenerQueue> userListeners = listeners.get(userId);
+        if (userListeners != null) {
+            for (ListenerQueue queue : userListeners.values()) {
+                queue.addEvent(event);
             }
         }
     }
@@ -199,18 +259,161 @@ public class ConnectionManager {
         void onUpdateEvent(Event event);
     }
 
-    public synchronized void addListener(long userId, UpdateListener listener) {
-        if (!listeners.containsKey(userId)) {
-            listeners.put(userId, new HashSet<>());
+    public void addListener(long userId, UpdateListener listener) {
+        listeners.compute(userId, (key, userListeners) -> {
+            if (userListeners == null) {
+                userListeners = new ConcurrentHashMap<>();
+            }
+            userListeners.put(listener, new ListenerQueue(listener));
+            return userListeners;
+        });
+    }
+
+    public void removeListener(long userId, UpdateListener listener) {
+        listeners.computeIfPresent(userId, (key, userListeners) -> {
+            ListenerQueue queue = userListeners.remove(listener);
+            if (queue != null) {
+                queue.close();
+            }
+            return userListeners.isEmpty() ? null : userListeners;
+        });
+    }
+
+    private void registerMetric(String key, long value) {
+        if (Main.getInjector() != null) {
+            Main.getInjector().getInstance(StatisticsManager.class).registerMetric("listener." + key, value);
         }
-        listeners.get(userId).add(listener);
     }
 
-    public synchronized void removeListener(long userId, UpdateListener listener) {
-        if (!listeners.containsKey(userId)) {
-            listeners.put(userId, new HashSet<>());
+    /**
+     * Pending updates for a single listener. Updates are delivered by the listener executor, at most one task per
+     * listener at a time, so updates for one listener are never delivered concurrently. Device and position updates
+     * are coalesced by device id.
+     */
+    private final class ListenerQueue implements Runnable {
+
+        private final UpdateListener listener;
+
+        private Map<Long, Device> devices = new LinkedHashMap<>();
+        private Map<Long, Position> positions = new LinkedHashMap<>();
+        private Deque<Event> events = new ArrayDeque<>();
+        private boolean keepalive;
+        private boolean scheduled;
+        private boolean closed;
+
+        private ListenerQueue(UpdateListener listener) {
+            this.listener = listener;
+        }
+
+        private boolean isEmpty() {
+            return devices.isEmpty() && positions.isEmpty() && events.isEmpty() && !keepalive;
+        }
+
+        private int size() {
+            return devices.size() + positions.size() + events.size();
+        }
+
+        private void schedule() {
+            if (!scheduled && !closed) {
+                scheduled = true;
+                listenerExecutor.execute(this);
+            }
+        }
+
+        public synchronized void addKeepalive() {
+            keepalive = true;
+            schedule();
+        }
+
+        public void addDevice(Device device) {
+            boolean coalesced;
+            synchronized (this) {
+                coalesced = devices.put(device.getId(), device) != null;
+                schedule();
+            }
+            if (coalesced) {
+                registerMetric("coalesced", 1);
+            }
+        }
+
+        public void addPosition(Position position) {
+            boolean coalesced;
+            synchronized (this) {
+                coalesced = positions.put(position.getDeviceId(), position) != null;
+                schedule();
+            }
+            if (coalesced) {
+                registerMetric("coalesced", 1);
+            }
+        }
+
+        public void addEvent(Event event) {
+            boolean dropped = false;
+            synchronized (this) {
+                if (events.size() >= listenerQueueSize) {
+                    events.poll();
+                    dropped = true;
+                }
+                events.add(event);
+                schedule();
+            }
+            if (dropped) {
+                registerMetric("dropped", 1);
+            }
+        }
+
+        public synchronized void close() {
+            closed = true;
+            devices.clear();
+            positions.clear();
+            events.clear();
+            keepalive = false;
+        }
+
+        @Override
+        public void run() {
+            Map<Long, Device> pendingDevices;
+            Map<Long, Position> pendingPositions;
+            Deque<Event> pendingEvents;
+            boolean pendingKeepalive;
+            int queueSize;
+            synchronized (this) {
+                queueSize = size();
+                pendingDevices = devices;
+                pendingPositions = positions;
+                pendingEvents = events;
+                pendingKeepalive = keepalive;
+                devices = new LinkedHashMap<>();
+                positions = new LinkedHashMap<>();
+                events = new ArrayDeque<>();
+                keepalive = false;
+            }
+            registerMetric("queue", queueSize);
+            try {
+                for (Device device : pendingDevices.values()) {
+                    listener.onUpdateDevice(device);
+                }
+                for (Position position : pendingPositions.values()) {
+                    listener.onUpdatePosition(position);
+                }
+                for (Event event : pendingEvents) {
+                    listener.onUpdateEvent(event);
+                }
+                if (pendingKeepalive) {
+                    listener.onKeepalive();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Listener update error", e);
+            } finally {
+                synchronized (this) {
+                    scheduled = false;
+                    if (!isEmpty()) {
+                        schedule();
+                    }
+                }
+            }
         }
-        listeners.get(userId).remove(listener);
+
     }
 
 }
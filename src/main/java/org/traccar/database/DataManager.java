@@ -46,17 +46,25 @@ import org.traccar.model.Position;
 import org.traccar.model.Server;
 import org.traccar.model.Statistics;
 import org.traccar.model.User;
+import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.SummaryRollup;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsCheckpoint;
 
 import javax.sql.DataSource;
 import java.beans.Introspector;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class DataManager {
@@ -81,10 +89,13 @@ public class DataManager {
 
     private final boolean forceLdap;
 
+    private final int fetchSize;
+
     public DataManager(Config config) throws Exception {
         this.config = config;
 
         forceLdap = config.getBoolean(Keys.LDAP_FORCE);
+        fetchSize = config.getInteger(Keys.DATABASE_FETCH_SIZE);
 
         initDatabase();
         initDatabaseSchema();
@@ -324,6 +335,16 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    public void updateDeviceStatuses(Collection<Device> devices) throws SQLException {
+        if (!devices.isEmpty()) {
+            QueryBuilder builder = QueryBuilder.create(dataSource, getQuery(ACTION_UPDATE, Device.class, true));
+            for (Device device : devices) {
+                builder.setObject(device).addBatch();
+            }
+            builder.executeBatch();
+        }
+    }
+
     public Collection<Position> getPositions(long deviceId, Date from, Date to) throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
                 .setLong("deviceId", deviceId)
@@ -332,6 +353,16 @@ public class DataManager {
                 .executeQuery(Position.class);
     }
 
+    public void getPositions(
+            long deviceId, Date from, Date to, QueryBuilder.ResultHandler<Position> handler)
+            throws SQLException, IOException {
+        QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(Position.class, fetchSize, handler);
+    }
+
     public void updateLatestPosition(Position position) throws SQLException {
         QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"))
                 .setDate("now", new Date())
@@ -339,6 +370,159 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    public void updateLatestPositions(Collection<Position> positions) throws SQLException {
+        if (!positions.isEmpty()) {
+            QueryBuilder builder = QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"));
+            for (Position position : positions) {
+                builder.setDate("now", new Date()).setObject(position).addBatch();
+            }
+            builder.executeBatch();
+        }
+    }
+
+    public Collection<TripReport> getTrips(long deviceId, int configHash, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectTrips"))
+                .setLong("deviceId", deviceId)
+                .setInteger("configHash", configHash)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(TripReport.class);
+    }
+
+    public Collection<StopReport> getStops(long deviceId, int configHash, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectStops"))
+                .setLong("deviceId", deviceId)
+                .setInteger("configHash", configHash)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(StopReport.class);
+    }
+
+    /**
+     * Returns earliest start time and latest end time of stored trips or stops.
+     */
+    public BaseReport getStoredRange(
+            long deviceId, int configHash, Class<? extends BaseReport> reportClass) throws SQLException {
+        String queryName = reportClass.equals(TripReport.class)
+                ? "database.selectTripsRange" : "database.selectStopsRange";
+        return QueryBuilder.create(dataSource, getQuery(queryName))
+                .setLong("deviceId", deviceId)
+                .setInteger("configHash", configHash)
+                .executeQuerySingle(BaseReport.class);
+    }
+
+    public void addReports(int configHash, List<? extends BaseReport> reports) throws SQLException {
+        if (!reports.isEmpty()) {
+            String queryName = reports.get(0) instanceof TripReport ? "database.insertTrip" : "database.insertStop";
+            QueryBuilder builder = QueryBuilder.create(dataSource, getQuery(queryName));
+            for (BaseReport report : reports) {
+                builder.setObject(report).setInteger("configHash", configHash).addBatch();
+            }
+            builder.executeBatch();
+        }
+    }
+
+    public TripsCheckpoint getTripsCheckpoint(long deviceId, int configHash) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectTripsCheckpoint"))
+                .setLong("deviceId", deviceId)
+                .setInteger("configHash", configHash)
+                .executeQuerySingle(TripsCheckpoint.class);
+    }
+
+    public void updateTripsCheckpoint(TripsCheckpoint checkpoint) throws SQLException {
+        if (checkpoint.getId() != 0) {
+            QueryBuilder.create(dataSource, getQuery("database.updateTripsCheckpoint"))
+                    .setObject(checkpoint)
+                    .executeUpdate();
+        } else {
+            checkpoint.setId(QueryBuilder.create(dataSource, getQuery("database.insertTripsCheckpoint"), true)
+                    .setObject(checkpoint)
+                    .executeUpdate());
+        }
+    }
+
+    /**
+     * Remove stored trips, stops and checkpoints calculated with a different configuration.
+     */
+    public void removeOutdatedReports(long deviceId, int configHash) throws SQLException {
+        for (String queryName : new String[] {
+                "database.deleteTrips", "database.deleteStops", "database.deleteTripsCheckpoints"}) {
+            QueryBuilder.create(dataSource, getQuery(queryName))
+                    .setLong("deviceId", deviceId)
+                    .setInteger("configHash", configHash)
+                    .executeUpdate();
+        }
+    }
+
+    public long getMaxPositionId() throws SQLException {
+        Position position = QueryBuilder.create(dataSource, getQuery("database.selectMaxPositionId"))
+                .executeQuerySingle(Position.class);
+        return position != null ? position.getId() : 0;
+    }
+
+    /**
+     * Returns positions with id greater than the first value and less than or equal to the second one.
+     */
+    public Collection<Position> getPositions(long fromId, long toId) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectPositionsRange"))
+                .setLong("fromId", fromId)
+                .setLong("toId", toId)
+                .executeQuery(Position.class);
+    }
+
+    public Collection<SummaryRollup> getSummaryRollups(long deviceId, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectSummaries"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(SummaryRollup.class);
+    }
+
+    public SummaryRollup getSummaryRollup(long deviceId, Date periodTime) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectSummary"))
+                .setLong("deviceId", deviceId)
+                .setDate("periodTime", periodTime)
+                .executeQuerySingle(SummaryRollup.class);
+    }
+
+    /**
+     * Returns the highest position id included in summary rollups.
+     */
+    public long getSummaryCheckpoint() throws SQLException {
+        SummaryRollup rollup = QueryBuilder.create(dataSource, getQuery("database.selectSummariesCheckpoint"))
+                .executeQuerySingle(SummaryRollup.class);
+        return rollup != null ? rollup.getMaxPositionId() : 0;
+    }
+
+    /**
+     * Update existing rollups in place and insert new ones, so a failed write never removes stored rollups.
+     */
+    public void updateSummaryRollups(Collection<SummaryRollup> rollups) throws SQLException {
+        List<SummaryRollup> existing = new ArrayList<>();
+        List<SummaryRollup> added = new ArrayList<>();
+        for (SummaryRollup rollup : rollups) {
+            if (rollup.getId() != 0) {
+                existing.add(rollup);
+            } else {
+                added.add(rollup);
+            }
+        }
+        if (!existing.isEmpty()) {
+            QueryBuilder builder = QueryBuilder.create(dataSource, getQuery("database.updateSummary"));
+            for (SummaryRollup rollup : existing) {
+                builder.setObject(rollup).addBatch();
+            }
+            builder.executeBatch();
+        }
+        if (!added.isEmpty()) {
+            QueryBuilder builder = QueryBuilder.create(dataSource, getQuery("database.insertSummary"));
+            for (SummaryRollup rollup : added) {
+                builder.setObject(rollup).addBatch();
+            }
+            builder.executeBatch();
+        }
+    }
+
     public Collection<Position> getLatestPositions() throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectLatestPositions"))
                 .executeQuery(Position.class);
@@ -429,6 +613,20 @@ public class DataManager {
                 .executeUpdate());
     }
 
+    public void addObjects(List<? extends BaseModel> entities) throws SQLException {
+        if (!entities.isEmpty()) {
+            QueryBuilder builder = QueryBuilder.create(
+                    dataSource, getQuery(ACTION_INSERT, entities.get(0).getClass()), true);
+            for (BaseModel entity : entities) {
+                builder.setObject(entity).addBatch();
+            }
+            long[] ids = builder.executeBatch();
+            for (int i = 0; i < ids.length; i++) {
+                entities.get(i).setId(ids[i]);
+            }
+        }
+    }
+
     public void updateObject(BaseModel entity) throws SQLException {
         QueryBuilder.create(dataSource, getQuery(ACTION_UPDATE, entity.getClass()))
                 .setObject(entity)
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,20 +16,25 @@
 package org.traccar.database;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
 import org.traccar.Context;
+import org.traccar.Main;
 import org.traccar.config.Keys;
+import org.traccar.handler.FilterHandler;
 import org.traccar.model.Command;
 import org.traccar.model.Device;
 import org.traccar.model.DeviceState;
@@ -53,6 +58,51 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
     private final Map<Long, DeviceState> deviceStates = new ConcurrentHashMap<>();
 
+    private static final Object ABSENT = new Object();
+
+    private static final class AttributeKey {
+
+        private final String name;
+        private final Class<?> type;
+        private final boolean lookupServer;
+        private final boolean lookupConfig;
+        private final int hashCode;
+
+        private AttributeKey(String name, Class<?> type, boolean lookupServer, boolean lookupConfig) {
+            this.name = name;
+            this.type = type;
+            this.lookupServer = lookupServer;
+            this.lookupConfig = lookupConfig;
+            hashCode = Objects.hash(name, type, lookupServer, lookupConfig);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AttributeKey)) {
+                return false;
+            }
+            AttributeKey that = (AttributeKey) o;
+            return lookupServer == that.lookupServer && lookupConfig == that.lookupConfig
+                    && name.equals(that.name) && type == that.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+    private final Map<Long, Map<AttributeKey, Object>> attributeCache = new ConcurrentHashMap<>();
+    private StatisticsManager statisticsManager;
+
+    private final long updateInterval;
+    private final Map<Long, Device> pendingDevices = new ConcurrentHashMap<>();
+    private final Map<Long, Position> pendingPositions = new ConcurrentHashMap<>();
+
     public DeviceManager(DataManager dataManager) {
         super(dataManager, Device.class);
         this.config = Context.getConfig();
@@ -68,6 +118,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             writeUnlock();
         }
         dataRefreshDelay = config.getLong(Keys.DATABASE_REFRESH_DELAY) * 1000;
+        updateInterval = config.getLong(Keys.DATABASE_DEVICE_UPDATE_INTERVAL);
         refreshLastPositions();
     }
 
@@ -260,6 +311,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     @Override
     protected void addNewItem(Device device) {
         super.addNewItem(device);
+        invalidateAttributes(device.getId());
         addByUniqueId(device);
         if (device.getPhone() != null  && !device.getPhone().isEmpty()) {
             addByPhone(device);
@@ -275,6 +327,8 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     @Override
     protected void updateCachedItem(Device device) {
         Device cachedDevice = getById(device.getId());
+        boolean attributesChanged = cachedDevice.getGroupId() != device.getGroupId()
+                || !cachedDevice.getAttributes().equals(device.getAttributes());
         cachedDevice.setName(device.getName());
         cachedDevice.setGroupId(device.getGroupId());
         cachedDevice.setCategory(device.getCategory());
@@ -294,6 +348,9 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             cachedDevice.setPhone(device.getPhone());
             addByPhone(cachedDevice);
         }
+        if (attributesChanged) {
+            invalidateAttributes(device.getId());
+        }
     }
 
     @Override
@@ -307,16 +364,66 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             removeByPhone(phone);
         }
         positions.remove(deviceId);
+        invalidateAttributes(deviceId);
+        if (Context.getNotificationManager() != null) {
+            Context.getNotificationManager().removeDevice(deviceId);
+        }
+        if (Main.getInjector() != null) {
+            FilterHandler filterHandler = Main.getInjector().getInstance(FilterHandler.class);
+            if (filterHandler != null) {
+                filterHandler.removeDevice(deviceId);
+            }
+        }
+    }
+
+    public long getUpdateInterval() {
+        return updateInterval;
     }
 
     public void updateDeviceStatus(Device device) throws SQLException {
-        getDataManager().updateDeviceStatus(device);
+        if (updateInterval > 0) {
+            pendingDevices.put(device.getId(), device);
+        } else {
+            getDataManager().updateDeviceStatus(device);
+        }
         Device cachedDevice = getById(device.getId());
         if (cachedDevice != null) {
             cachedDevice.setStatus(device.getStatus());
         }
     }
 
+    private static <T> List<T> takePending(Map<Long, T> pending) {
+        List<T> result = new ArrayList<>();
+        for (Long key : pending.keySet()) {
+            T value = pending.remove(key);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write pending device status and latest position changes to the database. Changes that failed to be written are
+     * kept for the next attempt unless they have been replaced by newer ones.
+     */
+    public void flushUpdates() {
+        List<Device> devices = takePending(pendingDevices);
+        try {
+            getDataManager().updateDeviceStatuses(devices);
+        } catch (SQLException error) {
+            LOGGER.warn("Update device status error", error);
+            devices.forEach(device -> pendingDevices.putIfAbsent(device.getId(), device));
+        }
+        List<Position> latestPositions = takePending(pendingPositions);
+        try {
+            getDataManager().updateLatestPositions(latestPositions);
+        } catch (SQLException error) {
+            LOGGER.warn("Update latest position error", error);
+            latestPositions.forEach(position -> pendingPositions.putIfAbsent(position.getDeviceId(), position));
+        }
+    }
+
     private void refreshLastPositions() {
         if (getDataManager() != null) {
             try {
@@ -338,7 +445,11 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
         if (isLatestPosition(position)) {
 
-            getDataManager().updateLatestPosition(position);
+            if (updateInterval > 0) {
+                pendingPositions.put(position.getDeviceId(), position);
+            } else {
+                getDataManager().updateLatestPosition(position);
+            }
 
             Device device = getById(position.getDeviceId());
             if (device != null) {
@@ -377,52 +488,103 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     @Override
     public boolean lookupAttributeBoolean(
             long deviceId, String attributeName, boolean defaultValue, boolean lookupServer, boolean lookupConfig) {
-        Object result = lookupAttribute(deviceId, attributeName, lookupServer, lookupConfig);
-        if (result != null) {
-            return result instanceof String ? Boolean.parseBoolean((String) result) : (Boolean) result;
-        }
-        return defaultValue;
+        Boolean result = lookupAttribute(deviceId, attributeName, Boolean.class, lookupServer, lookupConfig,
+                value -> value instanceof String ? Boolean.parseBoolean((String) value) : (Boolean) value);
+        return result != null ? result : defaultValue;
     }
 
     @Override
     public String lookupAttributeString(
             long deviceId, String attributeName, String defaultValue, boolean lookupServer, boolean lookupConfig) {
-        Object result = lookupAttribute(deviceId, attributeName, lookupServer, lookupConfig);
-        return result != null ? (String) result : defaultValue;
+        String result = lookupAttribute(deviceId, attributeName, String.class, lookupServer, lookupConfig,
+                value -> (String) value);
+        return result != null ? result : defaultValue;
     }
 
     @Override
     public int lookupAttributeInteger(
             long deviceId, String attributeName, int defaultValue, boolean lookupServer, boolean lookupConfig) {
-        Object result = lookupAttribute(deviceId, attributeName, lookupServer, lookupConfig);
-        if (result != null) {
-            return result instanceof String ? Integer.parseInt((String) result) : ((Number) result).intValue();
-        }
-        return defaultValue;
+        Integer result = lookupAttribute(deviceId, attributeName, Integer.class, lookupServer, lookupConfig,
+                value -> value instanceof String ? Integer.parseInt((String) value) : ((Number) value).intValue());
+        return result != null ? result : defaultValue;
     }
 
     @Override
     public long lookupAttributeLong(
             long deviceId, String attributeName, long defaultValue, boolean lookupServer, boolean lookupConfig) {
-        Object result = lookupAttribute(deviceId, attributeName, lookupServer, lookupConfig);
-        if (result != null) {
-            return result instanceof String ? Long.parseLong((String) result) : ((Number) result).longValue();
-        }
-        return defaultValue;
+        Long result = lookupAttribute(deviceId, attributeName, Long.class, lookupServer, lookupConfig,
+                value -> value instanceof String ? Long.parseLong((String) value) : ((Number) value).longValue());
+        return result != null ? result : defaultValue;
     }
 
     public double lookupAttributeDouble(
             long deviceId, String attributeName, double defaultValue, boolean lookupServer, boolean lookupConfig) {
-        Object result = lookupAttribute(deviceId, attributeName, lookupServer, lookupConfig);
-        if (result != null) {
-            return result instanceof String ? Double.parseDouble((String) result) : ((Number) result).doubleValue();
+        Double result = lookupAttribute(deviceId, attributeName, Double.class, lookupServer, lookupConfig,
+                value -> value instanceof String ? Double.parseDouble((String) value) : ((Number) value).doubleValue());
+        return result != null ? result : defaultValue;
+    }
+
+    /**
+     * Resolve attribute value and cache it in converted form. Missing values are cached as well. Cache for a device
+     * is dropped when the device, any of its groups or the server attributes change.
+     */
+    private <T> T lookupAttribute(
+            long deviceId, String attributeName, Class<T> type, boolean lookupServer, boolean lookupConfig,
+            Function<Object, T> converter) {
+        Device device = getById(deviceId);
+        if (device == null) {
+            return null;
+        }
+        Map<AttributeKey, Object> deviceCache = attributeCache.computeIfAbsent(
+                deviceId, key -> new ConcurrentHashMap<>());
+        AttributeKey key = new AttributeKey(attributeName, type, lookupServer, lookupConfig);
+        Object result = deviceCache.get(key);
+        if (result == null) {
+            registerMetric("misses");
+            Object value = lookupAttribute(device, attributeName, lookupServer, lookupConfig);
+            result = value != null ? converter.apply(value) : ABSENT;
+            deviceCache.put(key, result);
+        } else {
+            registerMetric("hits");
         }
-        return defaultValue;
+        return result != ABSENT ? type.cast(result) : null;
     }
 
-    private Object lookupAttribute(long deviceId, String attributeName, boolean lookupServer, boolean lookupConfig) {
+    public void invalidateAttributes(long deviceId) {
+        if (attributeCache != null) {
+            attributeCache.remove(deviceId);
+        }
+    }
+
+    public void invalidateGroupAttributes(long groupId) {
+        for (long deviceId : attributeCache.keySet()) {
+            Device device = getById(deviceId);
+            long currentGroupId = device != null ? device.getGroupId() : groupId;
+            while (currentGroupId != 0 && currentGroupId != groupId) {
+                Group group = Context.getGroupsManager().getById(currentGroupId);
+                currentGroupId = group != null ? group.getGroupId() : 0;
+            }
+            if (currentGroupId != 0) {
+                attributeCache.remove(deviceId);
+            }
+        }
+    }
+
+    public void invalidateAttributes() {
+        attributeCache.clear();
+    }
+
+    private void registerMetric(String key) {
+        if (statisticsManager == null && Main.getInjector() != null) {
+            statisticsManager = Main.getInjector().getInstance(StatisticsManager.class);
+        }
+        if (statisticsManager != null) {
+            statisticsManager.registerMetric("attributes.cache." + key, 1);
+        }
+    }
+
+    private Object lookupAttribute(Device device, String attributeName, boolean lookupServer, boolean lookupConfig) {
         Object result = null;
-        Device device = getById(deviceId);
         if (device != null) {
             result = device.getAttributes().get(attributeName);
             if (result == null) {
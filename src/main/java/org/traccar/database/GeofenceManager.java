@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,18 +17,62 @@ package org.traccar.database;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.traccar.Context;
-import org.traccar.model.Device;
+import org.traccar.geofence.GeofenceIndex;
 import org.traccar.model.Geofence;
 import org.traccar.model.Position;
 
 public class GeofenceManager extends ExtendedObjectManager<Geofence> {
 
+    // created on first use because base class constructor already loads items
+    private GeofenceIndex index;
+
     public GeofenceManager(DataManager dataManager) {
         super(dataManager, Geofence.class);
     }
 
+    private GeofenceIndex getIndex() {
+        if (index == null) {
+            index = new GeofenceIndex();
+        }
+        return index;
+    }
+
+    @Override
+    protected void addNewItem(Geofence geofence) {
+        super.addNewItem(geofence);
+        try {
+            writeLock();
+            getIndex().put(geofence.getId(), geofence.getGeometry());
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    protected void updateCachedItem(Geofence geofence) {
+        super.updateCachedItem(geofence);
+        try {
+            writeLock();
+            getIndex().put(geofence.getId(), geofence.getGeometry());
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    protected void removeCachedItem(long geofenceId) {
+        super.removeCachedItem(geofenceId);
+        try {
+            writeLock();
+            getIndex().remove(geofenceId);
+        } finally {
+            writeUnlock();
+        }
+    }
+
     @Override
     public final void refreshExtendedPermissions() {
         super.refreshExtendedPermissions();
@@ -37,18 +81,31 @@ public class GeofenceManager extends ExtendedObjectManager<Geofence> {
 
     public List<Long> getCurrentDeviceGeofences(Position position) {
         List<Long> result = new ArrayList<>();
-        for (long geofenceId : getAllDeviceItems(position.getDeviceId())) {
-            Geofence geofence = getById(geofenceId);
-            if (geofence != null && geofence.getGeometry()
-                    .containsPoint(position.getLatitude(), position.getLongitude())) {
-                result.add(geofenceId);
+        Set<Long> deviceGeofenceIds = getAllDeviceItems(position.getDeviceId());
+        if (deviceGeofenceIds.isEmpty()) {
+            return result;
+        }
+        List<Long> candidates;
+        try {
+            readLock();
+            candidates = getIndex().getCandidates(position.getLatitude(), position.getLongitude());
+        } finally {
+            readUnlock();
+        }
+        for (long geofenceId : candidates) {
+            if (deviceGeofenceIds.contains(geofenceId)) {
+                Geofence geofence = getById(geofenceId);
+                if (geofence != null && geofence.getGeometry()
+                        .containsPoint(position.getLatitude(), position.getLongitude())) {
+                    result.add(geofenceId);
+                }
             }
         }
         return result;
     }
 
     public void recalculateDevicesGeofences() {
-        for (Device device : Context.getDeviceManager().getAllDevices()) {
+        Context.getDeviceManager().getAllDevices().parallelStream().forEach(device -> {
             List<Long> deviceGeofenceIds = device.getGeofenceIds();
             if (deviceGeofenceIds == null) {
                 deviceGeofenceIds = new ArrayList<>();
@@ -60,7 +117,7 @@ public class GeofenceManager extends ExtendedObjectManager<Geofence> {
                 deviceGeofenceIds.addAll(getCurrentDeviceGeofences(lastPosition));
             }
             device.setGeofenceIds(deviceGeofenceIds);
-        }
+        });
     }
 
 }
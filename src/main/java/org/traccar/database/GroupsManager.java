@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -50,10 +50,33 @@ public class GroupsManager extends BaseObjectManager<Group> implements Managable
         return result;
     }
 
+    private void invalidateAttributes(long groupId) {
+        if (Context.getDeviceManager() != null) {
+            Context.getDeviceManager().invalidateGroupAttributes(groupId);
+        }
+    }
+
     @Override
     protected void addNewItem(Group group) {
         checkGroupCycles(group);
         super.addNewItem(group);
+        invalidateAttributes(group.getId());
+    }
+
+    @Override
+    protected void updateCachedItem(Group group) {
+        Group cachedGroup = getById(group.getId());
+        super.updateCachedItem(group);
+        if (cachedGroup == null || cachedGroup.getGroupId() != group.getGroupId()
+                || !cachedGroup.getAttributes().equals(group.getAttributes())) {
+            invalidateAttributes(group.getId());
+        }
+    }
+
+    @Override
+    protected void removeCachedItem(long groupId) {
+        super.removeCachedItem(groupId);
+        invalidateAttributes(groupId);
     }
 
     @Override
@@ -73,7 +96,7 @@ public class GroupsManager extends BaseObjectManager<Group> implements Managable
 
     @Override
     public Set<Long> getManagedItems(long userId) {
-        Set<Long> result = getUserItems(userId);
+        Set<Long> result = new HashSet<>(getUserItems(userId));
         for (long managedUserId : Context.getUsersManager().getUserItems(userId)) {
             result.addAll(getUserItems(managedUserId));
         }
@@ -19,17 +19,27 @@ package org.traccar.database;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.Main;
+import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.model.Calendar;
 import org.traccar.model.Event;
@@ -42,41 +52,252 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
     private static final Logger LOGGER = LoggerFactory.getLogger(NotificationManager.class);
 
     private final boolean geocodeOnRequest;
+    private final int batchSize;
+
+    private volatile BatchWriter<Event> eventWriter;
+    private ExecutorService[] dispatchExecutors;
+
+    private volatile long revision;
+
+    private final Map<Long, DeviceRoutes> deviceRoutes = new ConcurrentHashMap<>();
+
+    /**
+     * Notification of a specific user with parsed filters.
+     */
+    private static final class Route {
+
+        private final long calendarId;
+        private final Set<String> alarms;
+        private final Set<String> notificators;
+
+        private Route(Notification notification) {
+            calendarId = notification.getCalendarId();
+            String alarmsAttribute = notification.getString("alarms");
+            alarms = alarmsAttribute != null ? new HashSet<>(Arrays.asList(alarmsAttribute.split(","))) : null;
+            notificators = notification.getNotificatorsTypes();
+        }
+
+        private boolean matches(Event event) {
+            if (event.getType().equals(Event.TYPE_ALARM)) {
+                if (alarms == null || !alarms.contains(event.getString(Position.KEY_ALARM))) {
+                    return false;
+                }
+            }
+            if (calendarId != 0) {
+                Calendar calendar = Context.getCalendarManager().getById(calendarId);
+                return calendar == null || calendar.checkMoment(event.getEventTime());
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Notification routes of a device indexed by event type and user.
+     */
+    private static final class DeviceRoutes {
+
+        private final long revision;
+        private final Set<Long> users;
+        private final Map<String, Map<Long, List<Route>>> routes = new HashMap<>();
+
+        private DeviceRoutes(long revision, Set<Long> users) {
+            this.revision = revision;
+            this.users = users;
+        }
+
+        private List<Route> getRoutes(String type, long userId) {
+            Map<Long, List<Route>> typeRoutes = routes.get(type);
+            if (typeRoutes != null) {
+                return typeRoutes.getOrDefault(userId, Collections.emptyList());
+            }
+            return Collections.emptyList();
+        }
+
+    }
 
     public NotificationManager(DataManager dataManager) {
         super(dataManager, Notification.class);
         geocodeOnRequest = Context.getConfig().getBoolean(Keys.GEOCODER_ON_REQUEST);
+        batchSize = Context.getConfig().getInteger(Keys.DATABASE_BATCH_SIZE);
+    }
+
+    private void incrementRevision() {
+        try {
+            writeLock();
+            revision += 1;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    protected void addNewItem(Notification notification) {
+        super.addNewItem(notification);
+        incrementRevision();
+    }
+
+    @Override
+    protected void updateCachedItem(Notification notification) {
+        super.updateCachedItem(notification);
+        incrementRevision();
     }
 
-    private Set<Long> getEffectiveNotifications(long userId, long deviceId, Date time) {
-        Set<Long> result = new HashSet<>();
+    @Override
+    protected void removeCachedItem(long notificationId) {
+        super.removeCachedItem(notificationId);
+        incrementRevision();
+    }
+
+    @Override
+    public void refreshUserItems() {
+        super.refreshUserItems();
+        incrementRevision();
+    }
+
+    @Override
+    public void refreshExtendedPermissions() {
+        super.refreshExtendedPermissions();
+        incrementRevision();
+    }
+
+    private DeviceRoutes getDeviceRoutes(long deviceId) {
+        Set<Long> users = Context.getPermissionsManager().getDeviceUsers(deviceId);
+        DeviceRoutes result = deviceRoutes.get(deviceId);
+        if (result != null && result.revision == revision && result.users.equals(users)) {
+            return result;
+        }
+
+        result = new DeviceRoutes(revision, users);
         Set<Long> deviceNotifications = getAllDeviceItems(deviceId);
-        for (long itemId : getUserItems(userId)) {
-            if (getById(itemId).getAlways() || deviceNotifications.contains(itemId)) {
-                long calendarId = getById(itemId).getCalendarId();
-                Calendar calendar = calendarId != 0 ? Context.getCalendarManager().getById(calendarId) : null;
-                if (calendar == null || calendar.checkMoment(time)) {
-                    result.add(itemId);
+        for (long userId : users) {
+            for (long notificationId : getUserItems(userId)) {
+                Notification notification = getById(notificationId);
+                if (notification != null
+                        && (notification.getAlways() || deviceNotifications.contains(notificationId))) {
+                    result.routes
+                            .computeIfAbsent(notification.getType(), key -> new HashMap<>())
+                            .computeIfAbsent(userId, key -> new ArrayList<>())
+                            .add(new Route(notification));
                 }
             }
         }
+        deviceRoutes.put(deviceId, result);
         return result;
     }
 
+    public void removeDevice(long deviceId) {
+        deviceRoutes.remove(deviceId);
+    }
+
+    private BatchWriter<Event> getEventWriter() {
+        if (eventWriter == null && batchSize > 0 && Main.getInjector() != null) {
+            synchronized (this) {
+                if (eventWriter == null) {
+                    Config config = Context.getConfig();
+                    int queue = config.getInteger(Keys.DATABASE_BATCH_QUEUE);
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    dispatchExecutors = new ExecutorService[config.getInteger(Keys.DATABASE_BATCH_SHARDS)];
+                    for (int i = 0; i < dispatchExecutors.length; i++) {
+                        dispatchExecutors[i] = new ThreadPoolExecutor(
+                                1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queue), runnable -> {
+                                    Thread thread = new Thread(
+                                            runnable, "event-dispatch-" + threadIndex.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    }
+                    eventWriter = new BatchWriter<>(
+                            getDataManager(), Main.getInjector().getInstance(StatisticsManager.class), "events",
+                            batchSize, config.getLong(Keys.DATABASE_BATCH_DELAY),
+                            config.getInteger(Keys.DATABASE_BATCH_SHARDS),
+                            config.getInteger(Keys.DATABASE_BATCH_QUEUE));
+                }
+            }
+        }
+        return eventWriter;
+    }
+
+    /**
+     * Notifications are sent outside of batch writer threads, because they can include slow geocoding and forwarding
+     * requests. Events of the same device are always dispatched by the same thread to keep their order.
+     */
+    private ExecutorService getDispatchExecutor(long deviceId) {
+        return dispatchExecutors[(int) Math.floorMod(deviceId, (long) dispatchExecutors.length)];
+    }
+
+    public void stop() {
+        if (eventWriter != null) {
+            eventWriter.stop();
+        }
+        if (dispatchExecutors != null) {
+            for (ExecutorService executor : dispatchExecutors) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void registerWriteLatency(long startTime) {
+        if (Main.getInjector() != null) {
+            Main.getInjector().getInstance(StatisticsManager.class)
+                    .registerMetric("events.writeLatency", System.currentTimeMillis() - startTime);
+        }
+    }
+
     public void updateEvent(Event event, Position position) {
-        try {
-            getDataManager().addObject(event);
-        } catch (SQLException error) {
-            LOGGER.warn("Event save error", error);
+        updateEvents(Collections.singletonMap(event, position));
+    }
+
+    /**
+     * Stores events in a single batch and sends notifications after the batch is committed. If batching is enabled,
+     * events are queued and written together with events from other positions.
+     */
+    public void updateEvents(Map<Event, Position> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        BatchWriter<Event> writer = getEventWriter();
+        if (writer != null) {
+            for (Entry<Event, Position> entry : events.entrySet()) {
+                Event event = entry.getKey();
+                try {
+                    writer.write(event.getDeviceId(), event, success -> {
+                        if (!success) {
+                            LOGGER.warn("Event save error");
+                        }
+                        registerWriteLatency(startTime);
+                        getDispatchExecutor(event.getDeviceId()).execute(() -> dispatchEvent(event, entry.getValue()));
+                    });
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("Event save interrupted", error);
+                    return;
+                }
+            }
+        } else {
+            for (Event event : events.keySet()) {
+                try {
+                    getDataManager().addObject(event);
+                } catch (SQLException error) {
+                    LOGGER.warn("Event save error", error);
+                }
+            }
+            registerWriteLatency(startTime);
+            for (Entry<Event, Position> entry : events.entrySet()) {
+                dispatchEvent(entry.getKey(), entry.getValue());
+            }
         }
+    }
 
+    private void dispatchEvent(Event event, Position position) {
         long deviceId = event.getDeviceId();
-        Set<Long> users = Context.getPermissionsManager().getDeviceUsers(deviceId);
+        DeviceRoutes routes = getDeviceRoutes(deviceId);
         Set<Long> usersToForward = null;
         if (Context.getEventForwarder() != null) {
             usersToForward = new HashSet<>();
         }
-        for (long userId : users) {
+        for (long userId : routes.users) {
             if ((event.getGeofenceId() == 0
                     || Context.getGeofenceManager().checkItemPermission(userId, event.getGeofenceId()))
                     && (event.getMaintenanceId() == 0
@@ -84,23 +305,13 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
                 if (usersToForward != null) {
                     usersToForward.add(userId);
                 }
-                final Set<String> notificators = new HashSet<>();
-                for (long notificationId : getEffectiveNotifications(userId, deviceId, event.getEventTime())) {
-                    Notification notification = getById(notificationId);
-                    if (getById(notificationId).getType().equals(event.getType())) {
-                        boolean filter = false;
-                        if (event.getType().equals(Event.TYPE_ALARM)) {
-                            String alarmsAttribute = notification.getString("alarms");
-                            if (alarmsAttribute == null) {
-                                filter = true;
-                            } else {
-                                List<String> alarms = Arrays.asList(alarmsAttribute.split(","));
-                                filter = !alarms.contains(event.getString(Position.KEY_ALARM));
-                            }
-                        }
-                        if (!filter) {
-                            notificators.addAll(notification.getNotificatorsTypes());
+                Set<String> notificators = null;
+                for (Route route : routes.getRoutes(event.getType(), userId)) {
+                    if (route.matches(event)) {
+                        if (notificators == null) {
+                            notificators = new HashSet<>();
                         }
+                        notificators.addAll(route.notificators);
                     }
                 }
 
@@ -110,8 +321,10 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
                             .getAddress(position.getLatitude(), position.getLongitude(), null));
                 }
 
-                for (String notificator : notificators) {
-                    Context.getNotificatorManager().getNotificator(notificator).sendAsync(userId, event, position);
+                if (notificators != null) {
+                    for (String notificator : notificators) {
+                        Context.getNotificatorManager().getNotificator(notificator).sendAsync(userId, event, position);
+                    }
                 }
             }
         }
@@ -120,12 +333,6 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
         }
     }
 
-    public void updateEvents(Map<Event, Position> events) {
-        for (Entry<Event, Position> event : events.entrySet()) {
-            updateEvent(event.getKey(), event.getValue());
-        }
-    }
-
     public Set<Typed> getAllNotificationTypes() {
         Set<Typed> types = new HashSet<>();
         Field[] fields = Event.class.getDeclaredFields();
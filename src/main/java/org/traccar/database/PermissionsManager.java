@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.traccar.database;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.helper.LongSetMap;
 import org.traccar.model.Attribute;
 import org.traccar.model.BaseModel;
 import org.traccar.model.Calendar;
@@ -34,12 +35,8 @@ import org.traccar.model.Server;
 import org.traccar.model.User;
 
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class PermissionsManager {
 
@@ -50,12 +47,29 @@ public class PermissionsManager {
 
     private volatile Server server;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Immutable permissions state. A new snapshot is built on every refresh and then published atomically, so readers
+     * never have to lock.
+     */
+    private static final class Snapshot {
 
-    private final Map<Long, Set<Long>> groupPermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> devicePermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> deviceUsers = new HashMap<>();
-    private final Map<Long, Set<Long>> groupDevices = new HashMap<>();
+        private final LongSetMap groupPermissions;
+        private final LongSetMap devicePermissions;
+        private final LongSetMap deviceUsers;
+        private final LongSetMap groupDevices;
+
+        private Snapshot(
+                LongSetMap groupPermissions, LongSetMap devicePermissions,
+                LongSetMap deviceUsers, LongSetMap groupDevices) {
+            this.groupPermissions = groupPermissions;
+            this.devicePermissions = devicePermissions;
+            this.deviceUsers = deviceUsers;
+            this.groupDevices = groupDevices;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(
+            LongSetMap.EMPTY, LongSetMap.EMPTY, LongSetMap.EMPTY, LongSetMap.EMPTY);
 
     public PermissionsManager(DataManager dataManager, UsersManager usersManager) {
         this.dataManager = dataManager;
@@ -64,74 +78,26 @@ public class PermissionsManager {
         refreshDeviceAndGroupPermissions();
     }
 
-    protected final void readLock() {
-        lock.readLock().lock();
-    }
-
-    protected final void readUnlock() {
-        lock.readLock().unlock();
-    }
-
-    protected final void writeLock() {
-        lock.writeLock().lock();
-    }
-
-    protected final void writeUnlock() {
-        lock.writeLock().unlock();
-    }
-
     public User getUser(long userId) {
-        readLock();
-        try {
-            return usersManager.getById(userId);
-        } finally {
-            readUnlock();
-        }
+        return usersManager.getById(userId);
     }
 
     public Set<Long> getGroupPermissions(long userId) {
-        readLock();
-        try {
-            if (!groupPermissions.containsKey(userId)) {
-                groupPermissions.put(userId, new HashSet<>());
-            }
-            return groupPermissions.get(userId);
-        } finally {
-            readUnlock();
-        }
+        return snapshot.groupPermissions.get(userId);
     }
 
     public Set<Long> getDevicePermissions(long userId) {
-        readLock();
-        try {
-            if (!devicePermissions.containsKey(userId)) {
-                devicePermissions.put(userId, new HashSet<>());
-            }
-            return devicePermissions.get(userId);
-        } finally {
-            readUnlock();
-        }
-    }
-
-    private Set<Long> getAllDeviceUsers(long deviceId) {
-        readLock();
-        try {
-            if (!deviceUsers.containsKey(deviceId)) {
-                deviceUsers.put(deviceId, new HashSet<>());
-            }
-            return deviceUsers.get(deviceId);
-        } finally {
-            readUnlock();
-        }
+        return snapshot.devicePermissions.get(userId);
     }
 
     public Set<Long> getDeviceUsers(long deviceId) {
+        Set<Long> users = snapshot.deviceUsers.get(deviceId);
         Device device = Context.getIdentityManager().getById(deviceId);
         if (device != null && !device.getDisabled()) {
-            return getAllDeviceUsers(deviceId);
+            return users;
         } else {
             Set<Long> result = new HashSet<>();
-            for (long userId : getAllDeviceUsers(deviceId)) {
+            for (long userId : users) {
                 if (getUserAdmin(userId)) {
                     result.add(userId);
                 }
@@ -141,70 +107,64 @@ public class PermissionsManager {
     }
 
     public Set<Long> getGroupDevices(long groupId) {
-        readLock();
-        try {
-            if (!groupDevices.containsKey(groupId)) {
-                groupDevices.put(groupId, new HashSet<>());
-            }
-            return groupDevices.get(groupId);
-        } finally {
-            readUnlock();
-        }
+        return snapshot.groupDevices.get(groupId);
     }
 
     public void refreshServer() {
         try {
-            server = dataManager.getServer();
+            setServer(dataManager.getServer());
         } catch (SQLException error) {
             LOGGER.warn("Refresh server config error", error);
         }
     }
 
-    public final void refreshDeviceAndGroupPermissions() {
-        writeLock();
-        try {
-            groupPermissions.clear();
-            devicePermissions.clear();
-            try {
-                GroupTree groupTree = new GroupTree(Context.getGroupsManager().getItems(
-                        Context.getGroupsManager().getAllItems()),
-                        Context.getDeviceManager().getAllDevices());
-                for (Permission groupPermission : dataManager.getPermissions(User.class, Group.class)) {
-                    Set<Long> userGroupPermissions = getGroupPermissions(groupPermission.getOwnerId());
-                    Set<Long> userDevicePermissions = getDevicePermissions(groupPermission.getOwnerId());
-                    userGroupPermissions.add(groupPermission.getPropertyId());
-                    for (Group group : groupTree.getGroups(groupPermission.getPropertyId())) {
-                        userGroupPermissions.add(group.getId());
-                    }
-                    for (Device device : groupTree.getDevices(groupPermission.getPropertyId())) {
-                        userDevicePermissions.add(device.getId());
-                    }
-                }
+    private void setServer(Server server) {
+        Server previousServer = this.server;
+        this.server = server;
+        if (previousServer != null && !previousServer.getAttributes().equals(server.getAttributes())
+                && Context.getDeviceManager() != null) {
+            Context.getDeviceManager().invalidateAttributes();
+        }
+    }
 
-                for (Permission devicePermission : dataManager.getPermissions(User.class, Device.class)) {
-                    getDevicePermissions(devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
+    public final synchronized void refreshDeviceAndGroupPermissions() {
+        LongSetMap.Builder groupPermissions = new LongSetMap.Builder();
+        LongSetMap.Builder devicePermissions = new LongSetMap.Builder();
+        LongSetMap.Builder deviceUsers = new LongSetMap.Builder();
+        LongSetMap.Builder groupDevices = new LongSetMap.Builder();
+        try {
+            GroupTree groupTree = new GroupTree(Context.getGroupsManager().getItems(
+                    Context.getGroupsManager().getAllItems()),
+                    Context.getDeviceManager().getAllDevices());
+            for (Permission groupPermission : dataManager.getPermissions(User.class, Group.class)) {
+                long userId = groupPermission.getOwnerId();
+                groupPermissions.add(userId, groupPermission.getPropertyId());
+                for (Group group : groupTree.getGroups(groupPermission.getPropertyId())) {
+                    groupPermissions.add(userId, group.getId());
                 }
-
-                groupDevices.clear();
-                for (long groupId : Context.getGroupsManager().getAllItems()) {
-                    for (Device device : groupTree.getDevices(groupId)) {
-                        getGroupDevices(groupId).add(device.getId());
-                    }
+                for (Device device : groupTree.getDevices(groupPermission.getPropertyId())) {
+                    devicePermissions.add(userId, device.getId());
+                    deviceUsers.add(device.getId(), userId);
                 }
+            }
 
-            } catch (SQLException | ClassNotFoundException error) {
-                LOGGER.warn("Refresh device permissions error", error);
+            for (Permission devicePermission : dataManager.getPermissions(User.class, Device.class)) {
+                devicePermissions.add(devicePermission.getOwnerId(), devicePermission.getPropertyId());
+                deviceUsers.add(devicePermission.getPropertyId(), devicePermission.getOwnerId());
             }
 
-            deviceUsers.clear();
-            for (Map.Entry<Long, Set<Long>> entry : devicePermissions.entrySet()) {
-                for (long deviceId : entry.getValue()) {
-                    getAllDeviceUsers(deviceId).add(entry.getKey());
+            for (long groupId : Context.getGroupsManager().getAllItems()) {
+                for (Device device : groupTree.getDevices(groupId)) {
+                    groupDevices.add(groupId, device.getId());
                 }
             }
-        } finally {
-            writeUnlock();
+
+        } catch (SQLException | ClassNotFoundException error) {
+            LOGGER.warn("Refresh device permissions error", error);
         }
+
+        snapshot = new Snapshot(
+                groupPermissions.build(), devicePermissions.build(), deviceUsers.build(), groupDevices.build());
     }
 
     public boolean getUserAdmin(long userId) {
@@ -432,6 +392,9 @@ public class PermissionsManager {
         Context.getAttributesManager().refreshExtendedPermissions();
         Context.getCommandsManager().refreshExtendedPermissions();
         Context.getMaintenancesManager().refreshExtendedPermissions();
+        if (Context.getNotificationManager() != null) {
+            Context.getNotificationManager().refreshExtendedPermissions();
+        }
     }
 
     public void refreshPermissions(Permission permission) {
@@ -482,7 +445,7 @@ public class PermissionsManager {
 
     public void updateServer(Server server) throws SQLException {
         dataManager.updateObject(server);
-        this.server = server;
+        setServer(server);
     }
 
     public User login(String email, String password) throws SQLException {
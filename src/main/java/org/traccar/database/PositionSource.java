@@ -0,0 +1,30 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.traccar.model.Position;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Positions passed to the handler one by one while they are read, so they don't have to be loaded into memory.
+ */
+public interface PositionSource {
+
+    void read(QueryBuilder.ResultHandler<Position> handler) throws SQLException, IOException;
+
+}
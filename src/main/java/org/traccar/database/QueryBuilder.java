@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,16 +15,12 @@
  */
 package org.traccar.database;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.traccar.Context;
 import org.traccar.model.Permission;
 
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -33,11 +29,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -50,6 +47,7 @@ public final class QueryBuilder {
     private PreparedStatement statement;
     private final String query;
     private final boolean returnGeneratedKeys;
+    private int batchCount;
 
     private QueryBuilder(DataSource dataSource, String query, boolean returnGeneratedKeys) throws SQLException {
         this.query = query;
@@ -113,7 +111,7 @@ public final class QueryBuilder {
                     name = name.toLowerCase();
 
                     // Add to list
-                    List<Integer> indexList = paramMap.computeIfAbsent(name, k -> new LinkedList<>());
+                    List<Integer> indexList = paramMap.computeIfAbsent(name, k -> new ArrayList<>());
                     indexList.add(index);
 
                     index++;
@@ -137,11 +135,7 @@ public final class QueryBuilder {
 
     private List<Integer> indexes(String name) {
         name = name.toLowerCase();
-        List<Integer> result = indexMap.get(name);
-        if (result == null) {
-            result = new LinkedList<>();
-        }
-        return result;
+        return indexMap.getOrDefault(name, Collections.emptyList());
     }
 
     public QueryBuilder setBoolean(String name, boolean value) throws SQLException {
@@ -257,31 +251,13 @@ public final class QueryBuilder {
 
     public QueryBuilder setObject(Object object) throws SQLException {
 
-        Method[] methods = object.getClass().getMethods();
-
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
-                    && !method.isAnnotationPresent(QueryIgnore.class)) {
-                String name = method.getName().substring(3);
+        for (QueryMapping.Property<QueryMapping.Getter> getter : QueryMapping.get(object.getClass()).getGetters()) {
+            if (indexMap.containsKey(getter.getName().toLowerCase())) {
                 try {
-                    if (method.getReturnType().equals(boolean.class)) {
-                        setBoolean(name, (Boolean) method.invoke(object));
-                    } else if (method.getReturnType().equals(int.class)) {
-                        setInteger(name, (Integer) method.invoke(object));
-                    } else if (method.getReturnType().equals(long.class)) {
-                        setLong(name, (Long) method.invoke(object), name.endsWith("Id"));
-                    } else if (method.getReturnType().equals(double.class)) {
-                        setDouble(name, (Double) method.invoke(object));
-                    } else if (method.getReturnType().equals(String.class)) {
-                        setString(name, (String) method.invoke(object));
-                    } else if (method.getReturnType().equals(Date.class)) {
-                        setDate(name, (Date) method.invoke(object));
-                    } else if (method.getReturnType().equals(byte[].class)) {
-                        setBlob(name, (byte[]) method.invoke(object));
-                    } else {
-                        setString(name, Context.getObjectMapper().writeValueAsString(method.invoke(object)));
-                    }
-                } catch (IllegalAccessException | InvocationTargetException | JsonProcessingException error) {
+                    getter.getAccessor().bind(this, object);
+                } catch (SQLException error) {
+                    throw error;
+                } catch (Throwable error) {
                     LOGGER.warn("Get property error", error);
                 }
             }
@@ -290,10 +266,6 @@ public final class QueryBuilder {
         return this;
     }
 
-    private interface ResultSetProcessor<T> {
-        void process(T object, ResultSet resultSet) throws SQLException;
-    }
-
     public <T> T executeQuerySingle(Class<T> clazz) throws SQLException {
         Collection<T> result = executeQuery(clazz);
         if (!result.isEmpty()) {
@@ -303,140 +275,90 @@ public final class QueryBuilder {
         }
     }
 
-    private <T> void addProcessors(
-            List<ResultSetProcessor<T>> processors,
-            final Class<?> parameterType, final Method method, final String name) {
+    public interface ResultHandler<T> {
+        void handle(T object) throws IOException;
+    }
 
-        if (parameterType.equals(boolean.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getBoolean(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(int.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getInt(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(long.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getLong(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(double.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getDouble(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(String.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getString(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(Date.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    Timestamp timestamp = resultSet.getTimestamp(name);
-                    if (timestamp != null) {
-                        method.invoke(object, new Date(timestamp.getTime()));
-                    }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(byte[].class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getBytes(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else {
-            processors.add((object, resultSet) -> {
-                String value = resultSet.getString(name);
-                if (value != null && !value.isEmpty()) {
-                    try {
-                        method.invoke(object, Context.getObjectMapper().readValue(value, parameterType));
-                    } catch (InvocationTargetException | IllegalAccessException | IOException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
-                }
-            });
+    public <T> Collection<T> executeQuery(Class<T> clazz) throws SQLException {
+        List<T> result = new ArrayList<>();
+        try {
+            executeQuery(clazz, 0, result::add);
+        } catch (IOException e) {
+            throw new SQLException(e);
         }
+        return result;
     }
 
-    public <T> Collection<T> executeQuery(Class<T> clazz) throws SQLException {
-        List<T> result = new LinkedList<>();
+    /**
+     * Execute query and pass each row to the handler as soon as it is mapped, without keeping results in memory.
+     * If fetch size is positive, rows are read using a cursor inside a read-only transaction.
+     */
+    public <T> void executeQuery(Class<T> clazz, int fetchSize, ResultHandler<T> handler)
+            throws SQLException, IOException {
 
         if (query != null) {
 
             try {
 
+                if (fetchSize > 0) {
+                    connection.setAutoCommit(false);
+                    statement.setFetchSize(fetchSize);
+                }
+
                 try (ResultSet resultSet = statement.executeQuery()) {
 
                     ResultSetMetaData resultMetaData = resultSet.getMetaData();
 
-                    List<ResultSetProcessor<T>> processors = new LinkedList<>();
-
-                    Method[] methods = clazz.getMethods();
-
-                    for (final Method method : methods) {
-                        if (method.getName().startsWith("set") && method.getParameterTypes().length == 1
-                                && !method.isAnnotationPresent(QueryIgnore.class)) {
-
-                            final String name = method.getName().substring(3);
+                    Map<String, Integer> columns = new HashMap<>();
+                    for (int i = 1; i <= resultMetaData.getColumnCount(); i++) {
+                        columns.putIfAbsent(resultMetaData.getColumnLabel(i).toLowerCase(), i);
+                    }
 
-                            // Check if column exists
-                            boolean column = false;
-                            for (int i = 1; i <= resultMetaData.getColumnCount(); i++) {
-                                if (name.equalsIgnoreCase(resultMetaData.getColumnLabel(i))) {
-                                    column = true;
-                                    break;
-                                }
-                            }
-                            if (!column) {
-                                continue;
-                            }
+                    QueryMapping mapping = QueryMapping.get(clazz);
 
-                            addProcessors(processors, method.getParameterTypes()[0], method, name);
+                    List<QueryMapping.Setter> setters = new ArrayList<>();
+                    List<Integer> setterColumns = new ArrayList<>();
+                    for (QueryMapping.Property<QueryMapping.Setter> setter : mapping.getSetters()) {
+                        Integer column = columns.get(setter.getName().toLowerCase());
+                        if (column != null) {
+                            setters.add(setter.getAccessor());
+                            setterColumns.add(column);
                         }
                     }
+                    int[] indexes = setterColumns.stream().mapToInt(Integer::intValue).toArray();
 
                     while (resultSet.next()) {
+                        Object object;
                         try {
-                            T object = clazz.getDeclaredConstructor().newInstance();
-                            for (ResultSetProcessor<T> processor : processors) {
-                                processor.process(object, resultSet);
-                            }
-                            result.add(object);
-                        } catch (ReflectiveOperationException e) {
+                            object = mapping.newInstance();
+                        } catch (Throwable e) {
                             throw new IllegalArgumentException();
                         }
+                        for (int i = 0; i < indexes.length; i++) {
+                            try {
+                                setters.get(i).read(object, resultSet, indexes[i]);
+                            } catch (SQLException error) {
+                                throw error;
+                            } catch (Throwable error) {
+                                LOGGER.warn("Set property error", error);
+                            }
+                        }
+                        handler.handle(clazz.cast(object));
                     }
                 }
 
             } finally {
-                statement.close();
-                connection.close();
+                try {
+                    if (fetchSize > 0) {
+                        connection.rollback();
+                        connection.setAutoCommit(true);
+                    }
+                } finally {
+                    statement.close();
+                    connection.close();
+                }
             }
         }
-
-        return result;
     }
 
     public long executeUpdate() throws SQLException {
@@ -458,8 +380,55 @@ public final class QueryBuilder {
         return 0;
     }
 
+    public QueryBuilder addBatch() throws SQLException {
+        if (query != null) {
+            try {
+                statement.addBatch();
+                batchCount += 1;
+            } catch (SQLException error) {
+                statement.close();
+                connection.close();
+                throw error;
+            }
+        }
+        return this;
+    }
+
+    public long[] executeBatch() throws SQLException {
+        long[] result = new long[batchCount];
+        if (query != null && batchCount > 0) {
+            try {
+                connection.setAutoCommit(false);
+                try {
+                    statement.executeBatch();
+                    if (returnGeneratedKeys) {
+                        try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                            int index = 0;
+                            while (index < result.length && resultSet.next()) {
+                                result[index++] = resultSet.getLong(1);
+                            }
+                            if (index < result.length) {
+                                LOGGER.warn("Generated keys missing for " + (result.length - index) + " rows");
+                            }
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException error) {
+                    connection.rollback();
+                    throw error;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                statement.close();
+                connection.close();
+            }
+        }
+        return result;
+    }
+
     public Collection<Permission> executePermissionsQuery() throws SQLException, ClassNotFoundException {
-        List<Permission> result = new LinkedList<>();
+        List<Permission> result = new ArrayList<>();
         if (query != null) {
             try {
                 try (ResultSet resultSet = statement.executeQuery()) {
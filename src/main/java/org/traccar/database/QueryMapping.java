@@ -0,0 +1,203 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.traccar.Context;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached property accessors of a model class. Reflection is done only once per class, after that all properties are
+ * accessed through method handles.
+ */
+final class QueryMapping {
+
+    interface Getter {
+        void bind(QueryBuilder builder, Object object) throws Throwable;
+    }
+
+    interface Setter {
+        void read(Object object, ResultSet resultSet, int index) throws Throwable;
+    }
+
+    static final class Property<T> {
+
+        private final String name;
+        private final T accessor;
+
+        private Property(String name, T accessor) {
+            this.name = name;
+            this.accessor = accessor;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public T getAccessor() {
+            return accessor;
+        }
+
+    }
+
+    private static final Map<Class<?>, QueryMapping> MAPPINGS = new ConcurrentHashMap<>();
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private final MethodHandle constructor;
+    private final List<Property<Getter>> getters = new ArrayList<>();
+    private final List<Property<Setter>> setters = new ArrayList<>();
+
+    private QueryMapping(Class<?> clazz) {
+
+        MethodHandle constructorHandle;
+        try {
+            constructorHandle = LOOKUP.findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            constructorHandle = null;
+        }
+        constructor = constructorHandle;
+
+        for (Method method : clazz.getMethods()) {
+            if (method.isAnnotationPresent(QueryIgnore.class)) {
+                continue;
+            }
+            try {
+                if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
+                    String name = method.getName().substring(3);
+                    getters.add(new Property<>(name, createGetter(name, method)));
+                } else if (method.getName().startsWith("set") && method.getParameterTypes().length == 1) {
+                    String name = method.getName().substring(3);
+                    setters.add(new Property<>(name, createSetter(method)));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    public static QueryMapping get(Class<?> clazz) {
+        return MAPPINGS.computeIfAbsent(clazz, QueryMapping::new);
+    }
+
+    public Object newInstance() throws Throwable {
+        if (constructor == null) {
+            throw new IllegalArgumentException();
+        }
+        return (Object) constructor.invokeExact();
+    }
+
+    public List<Property<Getter>> getGetters() {
+        return Collections.unmodifiableList(getters);
+    }
+
+    public List<Property<Setter>> getSetters() {
+        return Collections.unmodifiableList(setters);
+    }
+
+    private static Getter createGetter(String name, Method method) throws IllegalAccessException {
+        Class<?> type = method.getReturnType();
+        MethodHandle handle = LOOKUP.unreflect(method);
+        if (type.equals(boolean.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(boolean.class, Object.class));
+            return (builder, object) -> builder.setBoolean(name, (boolean) h.invokeExact(object));
+        } else if (type.equals(int.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(int.class, Object.class));
+            return (builder, object) -> builder.setInteger(name, (int) h.invokeExact(object));
+        } else if (type.equals(long.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(long.class, Object.class));
+            boolean nullIfZero = name.endsWith("Id");
+            return (builder, object) -> builder.setLong(name, (long) h.invokeExact(object), nullIfZero);
+        } else if (type.equals(double.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(double.class, Object.class));
+            return (builder, object) -> builder.setDouble(name, (double) h.invokeExact(object));
+        }
+        MethodHandle h = handle.asType(MethodType.methodType(Object.class, Object.class));
+        if (type.equals(String.class)) {
+            return (builder, object) -> builder.setString(name, (String) (Object) h.invokeExact(object));
+        } else if (type.equals(Date.class)) {
+            return (builder, object) -> builder.setDate(name, (Date) (Object) h.invokeExact(object));
+        } else if (type.equals(byte[].class)) {
+            return (builder, object) -> builder.setBlob(name, (byte[]) (Object) h.invokeExact(object));
+        } else {
+            return (builder, object) -> builder.setString(
+                    name, Context.getObjectMapper().writeValueAsString((Object) h.invokeExact(object)));
+        }
+    }
+
+    private static Setter createSetter(Method method) throws IllegalAccessException {
+        Class<?> type = method.getParameterTypes()[0];
+        MethodHandle handle = LOOKUP.unreflect(method);
+        if (type.equals(boolean.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            return (object, resultSet, index) -> {
+                h.invokeExact(object, resultSet.getBoolean(index));
+            };
+        } else if (type.equals(int.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (object, resultSet, index) -> {
+                h.invokeExact(object, resultSet.getInt(index));
+            };
+        } else if (type.equals(long.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+            return (object, resultSet, index) -> {
+                h.invokeExact(object, resultSet.getLong(index));
+            };
+        } else if (type.equals(double.class)) {
+            MethodHandle h = handle.asType(MethodType.methodType(void.class, Object.class, double.class));
+            return (object, resultSet, index) -> {
+                h.invokeExact(object, resultSet.getDouble(index));
+            };
+        }
+        MethodHandle h = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        if (type.equals(String.class)) {
+            return (object, resultSet, index) -> {
+                h.invokeExact(object, (Object) resultSet.getString(index));
+            };
+        } else if (type.equals(Date.class)) {
+            return (object, resultSet, index) -> {
+                Timestamp timestamp = resultSet.getTimestamp(index);
+                if (timestamp != null) {
+                    h.invokeExact(object, (Object) new Date(timestamp.getTime()));
+                }
+            };
+        } else if (type.equals(byte[].class)) {
+            return (object, resultSet, index) -> {
+                h.invokeExact(object, (Object) resultSet.getBytes(index));
+            };
+        } else {
+            return (object, resultSet, index) -> {
+                String value = resultSet.getString(index);
+                if (value != null && !value.isEmpty()) {
+                    h.invokeExact(object, (Object) Context.getObjectMapper().readValue(value, type));
+                }
+            };
+        }
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.helper.DateUtil;
+import org.traccar.model.Metric;
 import org.traccar.model.Statistics;
 
 import javax.inject.Inject;
@@ -35,6 +36,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class StatisticsManager {
@@ -61,6 +64,8 @@ public class StatisticsManager {
     private int geocoderRequests;
     private int geolocationRequests;
 
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
     @Inject
     public StatisticsManager(Config config, DataManager dataManager, Client client, ObjectMapper objectMapper) {
         this.config = config;
@@ -180,4 +185,16 @@ public class StatisticsManager {
         geolocationRequests += 1;
     }
 
+    public void registerMetric(String key, long value) {
+        Metric metric = metrics.get(key);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(key, k -> new Metric());
+        }
+        metric.update(value);
+    }
+
+    public Map<String, Metric> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
 }
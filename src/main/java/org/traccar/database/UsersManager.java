@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -17,9 +17,12 @@
 package org.traccar.database;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.traccar.Main;
+import org.traccar.api.LoginCache;
 import org.traccar.model.User;
 
 public class UsersManager extends SimpleObjectManager<User> {
@@ -48,10 +51,28 @@ public class UsersManager extends SimpleObjectManager<User> {
         putToken(user);
     }
 
+    private void invalidateLogin(long userId) {
+        if (Main.getInjector() != null) {
+            Main.getInjector().getInstance(LoginCache.class).invalidate(userId);
+        }
+    }
+
+    /**
+     * Updated entity may be the cached object itself (password reset), so any provided password is treated as changed.
+     */
+    static boolean isLoginChanged(User cachedUser, User user) {
+        return user.getHashedPassword() != null
+                || user.getDisabled() != cachedUser.getDisabled()
+                || !Objects.equals(user.getExpirationTime(), cachedUser.getExpirationTime());
+    }
+
     @Override
     protected void updateCachedItem(User user) {
         User cachedUser = getById(user.getId());
         super.updateCachedItem(user);
+        if (isLoginChanged(cachedUser, user)) {
+            invalidateLogin(user.getId());
+        }
         putToken(user);
         if (cachedUser.getToken() != null && !cachedUser.getToken().equals(user.getToken())) {
             usersTokens.remove(cachedUser.getToken());
@@ -64,6 +85,7 @@ public class UsersManager extends SimpleObjectManager<User> {
         if (cachedUser != null) {
             String userToken = cachedUser.getToken();
             super.removeCachedItem(userId);
+            invalidateLogin(userId);
             if (userToken != null) {
                 usersTokens.remove(userToken);
             }
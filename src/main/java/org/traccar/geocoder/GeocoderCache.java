@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocoder;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.traccar.Main;
+import org.traccar.database.StatisticsManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Address cache keyed by coordinates rounded to a grid cell. Memory tier is split into independently locked LRU shards.
+ * Optional file tier keeps addresses between restarts. Requests for a cell that is already being resolved can wait for
+ * the pending result instead of sending another request.
+ */
+public class GeocoderCache {
+
+    private static final int SHARD_COUNT = 16;
+    private static final int MAX_PRECISION = 7;
+
+    private static final class Entry {
+        private final String address;
+        private final long time;
+
+        private Entry(String address, long time) {
+            this.address = address;
+            this.time = time;
+        }
+    }
+
+    private final double scale;
+    private final long timeout;
+    private final List<Map<Long, Entry>> shards = new ArrayList<>();
+    private final Map<Long, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+    private final MVStore store;
+    private final MVMap<Long, String> storeMap;
+
+    /**
+     * @param size maximum number of addresses kept in memory
+     * @param precision number of decimal places of coordinates
+     * @param timeout expiration time in milliseconds, 0 to never expire
+     * @param file optional persistent cache file
+     */
+    public GeocoderCache(int size, int precision, long timeout, String file) {
+        this.scale = Math.pow(10, Math.max(0, Math.min(precision, MAX_PRECISION)));
+        this.timeout = timeout;
+        int shardSize = Math.max(size / SHARD_COUNT, 1);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards.add(new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                    if (size() > shardSize) {
+                        registerMetric("evictions");
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        }
+        if (file != null) {
+            store = new MVStore.Builder().fileName(file).compress().open();
+            storeMap = store.openMap("addresses");
+        } else {
+            store = null;
+            storeMap = null;
+        }
+    }
+
+    private static void registerMetric(String key) {
+        if (Main.getInjector() != null) {
+            Main.getInjector().getInstance(StatisticsManager.class).registerMetric("geocoder.cache." + key, 1);
+        }
+    }
+
+    public long getKey(double latitude, double longitude) {
+        long latIndex = (long) Math.floor((latitude + 90) * scale);
+        long lonIndex = (long) Math.floor((longitude + 180) * scale);
+        return (latIndex << 32) | lonIndex;
+    }
+
+    private Map<Long, Entry> getShard(long key) {
+        return shards.get((int) Math.floorMod(key ^ (key >>> 32), (long) SHARD_COUNT));
+    }
+
+    private boolean isExpired(long time) {
+        return timeout > 0 && System.currentTimeMillis() - time > timeout;
+    }
+
+    public String get(long key) {
+        Map<Long, Entry> shard = getShard(key);
+        Entry entry;
+        synchronized (shard) {
+            entry = shard.get(key);
+            if (entry != null && isExpired(entry.time)) {
+                shard.remove(key);
+                entry = null;
+                registerMetric("evictions");
+            }
+        }
+        if (entry == null && storeMap != null) {
+            String value = storeMap.get(key);
+            if (value != null) {
+                int separator = value.indexOf('|');
+                long time = Long.parseLong(value.substring(0, separator));
+                if (isExpired(time)) {
+                    storeMap.remove(key);
+                    registerMetric("evictions");
+                } else {
+                    entry = new Entry(value.substring(separator + 1), time);
+                    synchronized (shard) {
+                        shard.put(key, entry);
+                    }
+                }
+            }
+        }
+        registerMetric(entry != null ? "hits" : "misses");
+        return entry != null ? entry.address : null;
+    }
+
+    public void put(long key, String address) {
+        long time = System.currentTimeMillis();
+        Map<Long, Entry> shard = getShard(key);
+        synchronized (shard) {
+            shard.put(key, new Entry(address, time));
+        }
+        if (storeMap != null) {
+            storeMap.put(key, time + "|" + address);
+        }
+    }
+
+    /**
+     * Registers pending request for the cell. If another request for the same cell is already in progress, returns
+     * its result future instead.
+     */
+    public CompletableFuture<String> addPending(long key, CompletableFuture<String> future) {
+        CompletableFuture<String> existing = pending.putIfAbsent(key, future);
+        if (existing != null) {
+            registerMetric("deduplicated");
+        }
+        return existing;
+    }
+
+    public void completePending(long key, CompletableFuture<String> future, String address, Throwable error) {
+        pending.remove(key, future);
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(address);
+        }
+    }
+
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+}
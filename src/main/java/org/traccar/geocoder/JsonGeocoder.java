@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,36 +19,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
 import org.traccar.Main;
+import org.traccar.config.Keys;
 import org.traccar.database.StatisticsManager;
 
 import javax.json.JsonObject;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.InvocationCallback;
-import java.util.AbstractMap;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public abstract class JsonGeocoder implements Geocoder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonGeocoder.class);
 
+    private static final long PENDING_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
     private final String url;
     private final AddressFormat addressFormat;
 
-    private Map<Map.Entry<Double, Double>, String> cache;
+    private GeocoderCache cache;
 
     public JsonGeocoder(String url, final int cacheSize, AddressFormat addressFormat) {
         this.url = url;
         this.addressFormat = addressFormat;
         if (cacheSize > 0) {
-            this.cache = Collections.synchronizedMap(new LinkedHashMap<Map.Entry<Double, Double>, String>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > cacheSize;
-                }
-            });
+            this.cache = new GeocoderCache(
+                    cacheSize,
+                    Context.getConfig().getInteger(Keys.GEOCODER_CACHE_PRECISION),
+                    Context.getConfig().getLong(Keys.GEOCODER_CACHE_TIMEOUT) * 1000,
+                    Context.getConfig().getString(Keys.GEOCODER_CACHE_FILE));
         }
     }
 
@@ -60,13 +62,14 @@ public abstract class JsonGeocoder implements Geocoder {
     }
 
     private String handleResponse(
-            double latitude, double longitude, JsonObject json, ReverseGeocoderCallback callback) {
+            long key, CompletableFuture<String> future, JsonObject json, ReverseGeocoderCallback callback) {
 
         Address address = parseAddress(json);
         if (address != null) {
             String formattedAddress = addressFormat.format(address);
             if (cache != null) {
-                cache.put(new AbstractMap.SimpleImmutableEntry<>(latitude, longitude), formattedAddress);
+                cache.put(key, formattedAddress);
+                cache.completePending(key, future, formattedAddress, null);
             }
             if (callback != null) {
                 callback.onSuccess(formattedAddress);
@@ -74,6 +77,7 @@ public abstract class JsonGeocoder implements Geocoder {
             return formattedAddress;
         } else {
             String msg = "Empty address. Error: " + parseError(json);
+            failPending(key, future, new GeocoderException(msg));
             if (callback != null) {
                 callback.onFailure(new GeocoderException(msg));
             } else {
@@ -83,41 +87,90 @@ public abstract class JsonGeocoder implements Geocoder {
         return null;
     }
 
+    private void failPending(long key, CompletableFuture<String> future, Throwable error) {
+        if (cache != null) {
+            cache.completePending(key, future, null, error);
+        }
+    }
+
+    private String waitPending(CompletableFuture<String> existing, ReverseGeocoderCallback callback) {
+        if (callback != null) {
+            existing.whenComplete((address, error) -> {
+                if (error == null) {
+                    callback.onSuccess(address);
+                } else {
+                    callback.onFailure(error);
+                }
+            });
+        } else {
+            try {
+                return existing.get(PENDING_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.warn("Geocoder error", e.getCause());
+            } catch (TimeoutException e) {
+                LOGGER.warn("Geocoder pending request timeout");
+            }
+        }
+        return null;
+    }
+
     @Override
     public String getAddress(
             final double latitude, final double longitude, final ReverseGeocoderCallback callback) {
 
+        long key = 0;
+        CompletableFuture<String> future = null;
         if (cache != null) {
-            String cachedAddress = cache.get(new AbstractMap.SimpleImmutableEntry<>(latitude, longitude));
+            key = cache.getKey(latitude, longitude);
+            String cachedAddress = cache.get(key);
             if (cachedAddress != null) {
                 if (callback != null) {
                     callback.onSuccess(cachedAddress);
                 }
                 return cachedAddress;
             }
+            future = new CompletableFuture<>();
+            CompletableFuture<String> existing = cache.addPending(key, future);
+            if (existing != null) {
+                return waitPending(existing, callback);
+            }
         }
 
         Main.getInjector().getInstance(StatisticsManager.class).registerGeocoderRequest();
 
         Invocation.Builder request = Context.getClient().target(String.format(url, latitude, longitude)).request();
 
+        final long cacheKey = key;
+        final CompletableFuture<String> pendingFuture = future;
         if (callback != null) {
             request.async().get(new InvocationCallback<JsonObject>() {
                 @Override
                 public void completed(JsonObject json) {
-                    handleResponse(latitude, longitude, json, callback);
+                    try {
+                        handleResponse(cacheKey, pendingFuture, json, callback);
+                    } catch (RuntimeException e) {
+                        failPending(cacheKey, pendingFuture, e);
+                        throw e;
+                    }
                 }
 
                 @Override
                 public void failed(Throwable throwable) {
+                    failPending(cacheKey, pendingFuture, throwable);
                     callback.onFailure(throwable);
                 }
             });
         } else {
             try {
-                return handleResponse(latitude, longitude, request.get(JsonObject.class), null);
+                return handleResponse(key, future, request.get(JsonObject.class), null);
             } catch (WebApplicationException e) {
+                failPending(key, future, e);
                 LOGGER.warn("Geocoder network error", e);
+            } catch (RuntimeException e) {
+                failPending(key, future, e);
+                throw e;
             }
         }
         return null;
@@ -129,4 +182,10 @@ public abstract class JsonGeocoder implements Geocoder {
         return null;
     }
 
+    public void close() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
 }
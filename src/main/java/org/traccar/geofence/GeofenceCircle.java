@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -53,6 +53,11 @@ public class GeofenceCircle extends GeofenceGeometry {
         return Math.PI * radius * radius;
     }
 
+    @Override
+    public Envelope calculateEnvelope() {
+        return createEnvelope(centerLatitude, centerLongitude, centerLatitude, centerLongitude, radius);
+    }
+
     @Override
     public String toWkt() {
         String wkt;
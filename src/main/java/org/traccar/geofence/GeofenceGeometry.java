@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,6 +27,66 @@ public abstract class GeofenceGeometry {
 
     public abstract void fromWkt(String wkt) throws ParseException;
 
+    /**
+     * Bounding box that contains every point for which {@link #containsPoint} can return true.
+     */
+    public abstract Envelope calculateEnvelope();
+
+    private static final double METERS_PER_DEGREE = 111000;
+
+    protected static Envelope createEnvelope(
+            double minLat, double minLon, double maxLat, double maxLon, double margin) {
+        double latMargin = margin / METERS_PER_DEGREE;
+        minLat = Math.max(minLat - latMargin, -90);
+        maxLat = Math.min(maxLat + latMargin, 90);
+        double cos = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        if (cos < 0.01) {
+            return new Envelope(minLat, -180, maxLat, 180);
+        }
+        double lonMargin = latMargin / cos;
+        minLon -= lonMargin;
+        maxLon += lonMargin;
+        if (minLon < -180 || maxLon > 180) {
+            return new Envelope(minLat, -180, maxLat, 180);
+        }
+        return new Envelope(minLat, minLon, maxLat, maxLon);
+    }
+
+    public static class Envelope {
+
+        private final double minLat;
+        private final double minLon;
+        private final double maxLat;
+        private final double maxLon;
+
+        public Envelope(double minLat, double minLon, double maxLat, double maxLon) {
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+        }
+
+        public double getMinLat() {
+            return minLat;
+        }
+
+        public double getMinLon() {
+            return minLon;
+        }
+
+        public double getMaxLat() {
+            return maxLat;
+        }
+
+        public double getMaxLon() {
+            return maxLon;
+        }
+
+        public boolean contains(double latitude, double longitude) {
+            return latitude >= minLat && latitude <= maxLat && longitude >= minLon && longitude <= maxLon;
+        }
+    }
+
     public static class Coordinate {
 
         private double lat;
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geofence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grid index over geofence envelopes. Each geofence is registered in every grid cell its envelope overlaps, so a
+ * lookup only has to check geofences from a single cell. Geofences that cover too many cells are kept in a separate
+ * list and checked by envelope only. The class is not thread-safe.
+ */
+public class GeofenceIndex {
+
+    public static final double DEFAULT_CELL_SIZE = 0.1;
+
+    private static final int MAX_CELLS = 256;
+
+    private static final class Entry {
+        private final long geofenceId;
+        private final GeofenceGeometry.Envelope envelope;
+
+        private Entry(long geofenceId, GeofenceGeometry.Envelope envelope) {
+            this.geofenceId = geofenceId;
+            this.envelope = envelope;
+        }
+    }
+
+    private final double cellSize;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<Long, Entry> large = new LinkedHashMap<>();
+
+    public GeofenceIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public GeofenceIndex(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private int cellIndex(double value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long cellKey(int latIndex, int lonIndex) {
+        return (long) latIndex << 32 | lonIndex & 0xffffffffL;
+    }
+
+    public void put(long geofenceId, GeofenceGeometry geometry) {
+        remove(geofenceId);
+        if (geometry == null) {
+            return;
+        }
+        GeofenceGeometry.Envelope envelope = geometry.calculateEnvelope();
+        Entry entry = new Entry(geofenceId, envelope);
+        entries.put(geofenceId, entry);
+        int minLat = cellIndex(envelope.getMinLat());
+        int minLon = cellIndex(envelope.getMinLon());
+        int maxLat = cellIndex(envelope.getMaxLat());
+        int maxLon = cellIndex(envelope.getMaxLon());
+        if ((long) (maxLat - minLat + 1) * (maxLon - minLon + 1) > MAX_CELLS) {
+            large.put(geofenceId, entry);
+        } else {
+            for (int i = minLat; i <= maxLat; i++) {
+                for (int j = minLon; j <= maxLon; j++) {
+                    cells.computeIfAbsent(cellKey(i, j), key -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+    }
+
+    public void remove(long geofenceId) {
+        Entry entry = entries.remove(geofenceId);
+        if (entry == null || large.remove(geofenceId) != null) {
+            return;
+        }
+        GeofenceGeometry.Envelope envelope = entry.envelope;
+        for (int i = cellIndex(envelope.getMinLat()); i <= cellIndex(envelope.getMaxLat()); i++) {
+            for (int j = cellIndex(envelope.getMinLon()); j <= cellIndex(envelope.getMaxLon()); j++) {
+                long key = cellKey(i, j);
+                List<Entry> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns geofences with envelope containing the point. The result still has to be checked using
+     * {@link GeofenceGeometry#containsPoint}.
+     */
+    public List<Long> getCandidates(double latitude, double longitude) {
+        List<Long> result = new ArrayList<>();
+        List<Entry> cell = cells.get(cellKey(cellIndex(latitude), cellIndex(longitude)));
+        if (cell != null) {
+            for (Entry entry : cell) {
+                if (entry.envelope.contains(latitude, longitude)) {
+                    result.add(entry.geofenceId);
+                }
+            }
+        }
+        for (Entry entry : large.values()) {
+            if (entry.envelope.contains(latitude, longitude)) {
+                result.add(entry.geofenceId);
+            }
+        }
+        return result;
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -124,6 +124,24 @@ public class GeofencePolygon extends GeofenceGeometry {
         return polygonBuilder.build().getArea(SpatialContext.GEO) * DEG_TO_KM * DEG_TO_KM;
     }
 
+    @Override
+    public Envelope calculateEnvelope() {
+        double minLat = 90;
+        double minLon = 180;
+        double maxLat = -90;
+        double maxLon = -180;
+        for (Coordinate coordinate : coordinates) {
+            minLat = Math.min(minLat, coordinate.getLat());
+            minLon = Math.min(minLon, coordinate.getLon());
+            maxLat = Math.max(maxLat, coordinate.getLat());
+            maxLon = Math.max(maxLon, coordinate.getLon());
+        }
+        if (needNormalize) {
+            return new Envelope(minLat, -180, maxLat, 180);
+        }
+        return new Envelope(minLat, minLon, maxLat, maxLon);
+    }
+
     @Override
     public String toWkt() {
         StringBuilder buf = new StringBuilder();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -23,6 +23,8 @@ import org.traccar.helper.DistanceCalculator;
 
 public class GeofencePolyline extends GeofenceGeometry {
 
+    private static final double EARTH_RADIUS = 6378137;
+
     private ArrayList<Coordinate> coordinates;
     private double distance;
 
@@ -51,6 +53,34 @@ public class GeofencePolyline extends GeofenceGeometry {
         return 0;
     }
 
+    @Override
+    public Envelope calculateEnvelope() {
+        double minLat = 90;
+        double minLon = 180;
+        double maxLat = -90;
+        double maxLon = -180;
+        double maxSegment = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            Coordinate coordinate = coordinates.get(i);
+            minLat = Math.min(minLat, coordinate.getLat());
+            minLon = Math.min(minLon, coordinate.getLon());
+            maxLat = Math.max(maxLat, coordinate.getLat());
+            maxLon = Math.max(maxLon, coordinate.getLon());
+            if (i > 0) {
+                Coordinate previous = coordinates.get(i - 1);
+                if (Math.abs(coordinate.getLon() - previous.getLon()) > 180) {
+                    minLon = -180;
+                    maxLon = 180;
+                }
+                maxSegment = Math.max(maxSegment, DistanceCalculator.distance(
+                        previous.getLat(), previous.getLon(), coordinate.getLat(), coordinate.getLon()));
+            }
+        }
+        // great circle segments can bulge away from their end points
+        double bulge = maxSegment * maxSegment / (2 * EARTH_RADIUS);
+        return createEnvelope(minLat, minLon, maxLat, maxLon, distance + bulge);
+    }
+
     @Override
     public String toWkt() {
         StringBuilder buf = new StringBuilder();
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.database.StatisticsManager;
+import org.traccar.model.Position;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Base class for handlers that enrich positions using asynchronous lookups. Lookups for the same device can run in
+ * parallel, but positions are always passed to the next handler in the order they were received. Number of concurrent
+ * lookups is limited globally and per device, overload policy decides what happens with positions above the limit.
+ */
+public abstract class BaseEnrichmentHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BaseEnrichmentHandler.class);
+
+    public enum OverloadPolicy {
+        WAIT, SKIP, DROP
+    }
+
+    private static final class Slot {
+
+        private final ChannelHandlerContext ctx;
+        private final Position position;
+        private final DeviceQueue queue;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private long startTime;
+        private boolean done;
+        private boolean dropped;
+
+        private Slot(ChannelHandlerContext ctx, Position position, DeviceQueue queue) {
+            this.ctx = ctx;
+            this.position = position;
+            this.queue = queue;
+        }
+
+    }
+
+    private static final class DeviceQueue {
+
+        private final long deviceId;
+        private final Deque<Slot> slots = new ArrayDeque<>();
+        private int requests;
+        private boolean removed;
+
+        private DeviceQueue(long deviceId) {
+            this.deviceId = deviceId;
+        }
+
+    }
+
+    private final String name;
+    private final StatisticsManager statisticsManager;
+    private final int maxRequests;
+    private final int maxDeviceRequests;
+    private final int maxWaiting;
+    private final OverloadPolicy overloadPolicy;
+
+    private final Map<Long, DeviceQueue> queues = new ConcurrentHashMap<>();
+
+    private final Deque<Slot> waiting = new ArrayDeque<>();
+    private int requests;
+
+    public BaseEnrichmentHandler(Config config, StatisticsManager statisticsManager, String name) {
+        this.name = name;
+        this.statisticsManager = statisticsManager;
+        maxRequests = Math.max(config.getInteger(Keys.ENRICHMENT_MAX_REQUESTS), 1);
+        maxDeviceRequests = Math.max(config.getInteger(Keys.ENRICHMENT_MAX_DEVICE_REQUESTS), 1);
+        maxWaiting = config.getInteger(Keys.ENRICHMENT_QUEUE);
+        overloadPolicy = OverloadPolicy.valueOf(config.getString(Keys.ENRICHMENT_OVERLOAD_POLICY).toUpperCase());
+    }
+
+    /**
+     * Check if position needs an asynchronous lookup. Implementation can also enrich the position directly if the
+     * result is available locally.
+     */
+    protected abstract boolean requiresLookup(Position position);
+
+    /**
+     * Start asynchronous lookup. Completion callback has to be called exactly once, from any thread, after the
+     * position is updated, regardless of lookup result.
+     */
+    protected abstract void lookup(Position position, Runnable completion);
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object message) {
+        if (!(message instanceof Position)) {
+            ctx.fireChannelRead(message);
+            return;
+        }
+
+        Position position = (Position) message;
+        boolean lookupRequired = requiresLookup(position);
+
+        DeviceQueue queue = queues.get(position.getDeviceId());
+        if (!lookupRequired && queue == null) {
+            ctx.fireChannelRead(position);
+            return;
+        }
+
+        Slot slot;
+        while (true) {
+            if (queue == null) {
+                queue = queues.computeIfAbsent(position.getDeviceId(), DeviceQueue::new);
+            }
+            synchronized (queue) {
+                if (!queue.removed) {
+                    if (!lookupRequired && queue.slots.isEmpty()) {
+                        slot = null;
+                    } else {
+                        slot = new Slot(ctx, position, queue);
+                        slot.done = !lookupRequired;
+                        queue.slots.add(slot);
+                    }
+                    break;
+                }
+            }
+            queue = null;
+        }
+
+        if (slot == null) {
+            ctx.fireChannelRead(position);
+        } else if (lookupRequired) {
+            submit(slot);
+        }
+    }
+
+    private void submit(Slot slot) {
+        boolean start = false;
+        boolean overloaded = false;
+        int waitingSize = 0;
+        synchronized (waiting) {
+            if (requests < maxRequests && slot.queue.requests < maxDeviceRequests) {
+                requests += 1;
+                slot.queue.requests += 1;
+                start = true;
+            } else if (overloadPolicy == OverloadPolicy.WAIT && waiting.size() < maxWaiting) {
+                waiting.add(slot);
+                waitingSize = waiting.size();
+            } else {
+                overloaded = true;
+            }
+        }
+
+        if (start) {
+            start(slot);
+        } else if (overloaded) {
+            if (overloadPolicy == OverloadPolicy.DROP) {
+                registerMetric("dropped", 1);
+                LOGGER.warn("{} overloaded, position dropped", name);
+                slot.dropped = true;
+            } else {
+                registerMetric("skipped", 1);
+            }
+            complete(slot, false);
+        } else {
+            registerMetric("queue", waitingSize);
+        }
+    }
+
+    private void start(Slot slot) {
+        slot.startTime = System.currentTimeMillis();
+        try {
+            lookup(slot.position, () -> complete(slot, true));
+        } catch (RuntimeException error) {
+            LOGGER.warn("{} lookup error", name, error);
+            complete(slot, true);
+        }
+    }
+
+    private void complete(Slot slot, boolean started) {
+        if (!slot.completed.compareAndSet(false, true)) {
+            return;
+        }
+
+        List<Slot> next = null;
+        if (started) {
+            registerMetric("latency", System.currentTimeMillis() - slot.startTime);
+            synchronized (waiting) {
+                requests -= 1;
+                slot.queue.requests -= 1;
+                Iterator<Slot> iterator = waiting.iterator();
+                while (iterator.hasNext() && requests < maxRequests) {
+                    Slot waitingSlot = iterator.next();
+                    if (waitingSlot.queue.requests < maxDeviceRequests) {
+                        iterator.remove();
+                        requests += 1;
+                        waitingSlot.queue.requests += 1;
+                        if (next == null) {
+                            next = new ArrayList<>();
+                        }
+                        next.add(waitingSlot);
+                    }
+                }
+            }
+        }
+
+        synchronized (slot.queue) {
+            slot.done = true;
+        }
+
+        if (slot.ctx.executor().inEventLoop()) {
+            drain(slot.queue);
+        } else {
+            slot.ctx.executor().execute(() -> drain(slot.queue));
+        }
+
+        if (next != null) {
+            for (Slot nextSlot : next) {
+                start(nextSlot);
+            }
+        }
+    }
+
+    private void drain(DeviceQueue queue) {
+        List<Slot> ready = new ArrayList<>();
+        synchronized (queue) {
+            while (!queue.slots.isEmpty() && queue.slots.peek().done) {
+                ready.add(queue.slots.poll());
+            }
+            if (queue.slots.isEmpty() && !queue.removed) {
+                queue.removed = true;
+                queues.remove(queue.deviceId, queue);
+            }
+        }
+        for (Slot slot : ready) {
+            if (!slot.dropped) {
+                if (slot.ctx.executor().inEventLoop()) {
+                    slot.ctx.fireChannelRead(slot.position);
+                } else {
+                    slot.ctx.executor().execute(() -> slot.ctx.fireChannelRead(slot.position));
+                }
+            }
+        }
+    }
+
+    private void registerMetric(String key, long value) {
+        if (statisticsManager != null) {
+            statisticsManager.registerMetric(name + "." + key, value);
+        }
+    }
+
+}
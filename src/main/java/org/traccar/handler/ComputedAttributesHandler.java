@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -16,19 +16,18 @@
  */
 package org.traccar.handler;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import io.netty.channel.ChannelHandler;
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
-import org.apache.commons.jexl2.MapContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.BaseDataHandler;
@@ -36,6 +35,7 @@ import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.database.AttributesManager;
 import org.traccar.database.IdentityManager;
+import org.traccar.database.StatisticsManager;
 import org.traccar.model.Attribute;
 import org.traccar.model.Device;
 import org.traccar.model.Position;
@@ -45,53 +45,134 @@ public class ComputedAttributesHandler extends BaseDataHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ComputedAttributesHandler.class);
 
+    private static final Map<String, Function<Position, Object>> PROPERTIES = new HashMap<>();
+
+    static {
+        PROPERTIES.put("id", Position::getId);
+        PROPERTIES.put("deviceId", Position::getDeviceId);
+        PROPERTIES.put("type", Position::getType);
+        PROPERTIES.put("protocol", Position::getProtocol);
+        PROPERTIES.put("serverTime", Position::getServerTime);
+        PROPERTIES.put("deviceTime", Position::getDeviceTime);
+        PROPERTIES.put("fixTime", Position::getFixTime);
+        PROPERTIES.put("outdated", Position::getOutdated);
+        PROPERTIES.put("valid", Position::getValid);
+        PROPERTIES.put("latitude", Position::getLatitude);
+        PROPERTIES.put("longitude", Position::getLongitude);
+        PROPERTIES.put("altitude", Position::getAltitude);
+        PROPERTIES.put("speed", Position::getSpeed);
+        PROPERTIES.put("course", Position::getCourse);
+        PROPERTIES.put("address", Position::getAddress);
+        PROPERTIES.put("accuracy", Position::getAccuracy);
+        PROPERTIES.put("network", Position::getNetwork);
+    }
+
     private final IdentityManager identityManager;
     private final AttributesManager attributesManager;
+    private final StatisticsManager statisticsManager;
 
     private final JexlEngine engine;
 
     private final boolean includeDeviceAttributes;
 
+    private final Map<Long, CachedExpression> expressions = new ConcurrentHashMap<>();
+    private volatile long revision;
+
+    private static final class CachedExpression {
+        private final String text;
+        private final Expression expression;
+
+        private CachedExpression(String text, Expression expression) {
+            this.text = text;
+            this.expression = expression;
+        }
+    }
+
+    /**
+     * Resolves variables on demand. Values assigned by an expression are only visible to that expression and don't
+     * modify the position.
+     */
+    private final class PositionContext implements JexlContext {
+
+        private final Position position;
+        private Map<String, Object> device;
+        private Map<String, Object> variables;
+
+        private PositionContext(Position position) {
+            this.position = position;
+        }
+
+        private Map<String, Object> getDeviceAttributes() {
+            if (device == null) {
+                Device value = includeDeviceAttributes ? identityManager.getById(position.getDeviceId()) : null;
+                device = value != null ? value.getAttributes() : Collections.emptyMap();
+            }
+            return device;
+        }
+
+        @Override
+        public Object get(String name) {
+            if (variables != null && variables.containsKey(name)) {
+                return variables.get(name);
+            }
+            Object value = position.getAttributes().get(name);
+            if (value != null) {
+                return value;
+            }
+            Function<Position, Object> property = PROPERTIES.get(name);
+            if (property != null) {
+                return property.apply(position);
+            }
+            return getDeviceAttributes().get(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            if (variables == null) {
+                variables = new HashMap<>();
+            }
+            variables.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return variables != null && variables.containsKey(name)
+                    || position.getAttributes().containsKey(name)
+                    || PROPERTIES.containsKey(name)
+                    || getDeviceAttributes().containsKey(name);
+        }
+
+    }
+
     public ComputedAttributesHandler(
             Config config, IdentityManager identityManager, AttributesManager attributesManager) {
+        this(config, identityManager, attributesManager, null);
+    }
+
+    public ComputedAttributesHandler(
+            Config config, IdentityManager identityManager, AttributesManager attributesManager,
+            StatisticsManager statisticsManager) {
         this.identityManager = identityManager;
         this.attributesManager = attributesManager;
+        this.statisticsManager = statisticsManager;
         engine = new JexlEngine();
         engine.setStrict(true);
         engine.setFunctions(Collections.singletonMap("math", Math.class));
         includeDeviceAttributes = config.getBoolean(Keys.PROCESSING_COMPUTED_ATTRIBUTES_DEVICE_ATTRIBUTES);
     }
 
-    private MapContext prepareContext(Position position) {
-        MapContext result = new MapContext();
-        if (includeDeviceAttributes) {
-            Device device = identityManager.getById(position.getDeviceId());
-            if (device != null) {
-                for (Object key : device.getAttributes().keySet()) {
-                    result.set((String) key, device.getAttributes().get(key));
-                }
-            }
+    private Expression getExpression(Attribute attribute) {
+        if (attributesManager != null && attributesManager.getRevision() != revision) {
+            revision = attributesManager.getRevision();
+            expressions.clear();
         }
-        Set<Method> methods = new HashSet<>(Arrays.asList(position.getClass().getMethods()));
-        methods.removeAll(Arrays.asList(Object.class.getMethods()));
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
-                String name = Character.toLowerCase(method.getName().charAt(3)) + method.getName().substring(4);
-
-                try {
-                    if (!method.getReturnType().equals(Map.class)) {
-                        result.set(name, method.invoke(position));
-                    } else {
-                        for (Object key : ((Map) method.invoke(position)).keySet()) {
-                            result.set((String) key, ((Map) method.invoke(position)).get(key));
-                        }
-                    }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Attribute reflection error", error);
-                }
-            }
+        CachedExpression cached = expressions.get(attribute.getId());
+        if (cached == null || !cached.text.equals(attribute.getExpression())) {
+            cached = new CachedExpression(
+                    attribute.getExpression(), engine.createExpression(attribute.getExpression()));
+            expressions.put(attribute.getId(), cached);
         }
-        return result;
+        return cached.expression;
     }
 
     /**
@@ -99,7 +180,7 @@ public class ComputedAttributesHandler extends BaseDataHandler {
      */
     @Deprecated
     public Object computeAttribute(Attribute attribute, Position position) throws JexlException {
-        return engine.createExpression(attribute.getExpression()).evaluate(prepareContext(position));
+        return getExpression(attribute).evaluate(new PositionContext(position));
     }
 
     @Override
@@ -109,11 +190,16 @@ public class ComputedAttributesHandler extends BaseDataHandler {
         for (Attribute attribute : attributes) {
             if (attribute.getAttribute() != null) {
                 Object result = null;
+                long start = System.nanoTime();
                 try {
                     result = computeAttribute(attribute, position);
                 } catch (JexlException error) {
                     LOGGER.warn("Attribute computation error", error);
                 }
+                if (statisticsManager != null) {
+                    statisticsManager.registerMetric(
+                            "computedAttributes." + attribute.getId(), (System.nanoTime() - start) / 1000);
+                }
                 if (result != null) {
                     try {
                         switch (attribute.getType()) {
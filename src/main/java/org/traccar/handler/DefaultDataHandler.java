@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,10 +16,15 @@
 package org.traccar.handler;
 
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.BaseDataHandler;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.database.BatchWriter;
 import org.traccar.database.DataManager;
+import org.traccar.database.StatisticsManager;
 import org.traccar.model.Position;
 
 @ChannelHandler.Sharable
@@ -28,9 +33,41 @@ public class DefaultDataHandler extends BaseDataHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataHandler.class);
 
     private final DataManager dataManager;
+    private final BatchWriter<Position> batchWriter;
 
-    public DefaultDataHandler(DataManager dataManager) {
+    public DefaultDataHandler(Config config, DataManager dataManager, StatisticsManager statisticsManager) {
         this.dataManager = dataManager;
+        int batchSize = config.getInteger(Keys.DATABASE_BATCH_SIZE);
+        if (batchSize > 0) {
+            batchWriter = new BatchWriter<>(
+                    dataManager, statisticsManager, "positions", batchSize,
+                    config.getLong(Keys.DATABASE_BATCH_DELAY),
+                    config.getInteger(Keys.DATABASE_BATCH_SHARDS),
+                    config.getInteger(Keys.DATABASE_BATCH_QUEUE));
+        } else {
+            batchWriter = null;
+        }
+    }
+
+    public void stop() {
+        if (batchWriter != null) {
+            batchWriter.stop();
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof Position && batchWriter != null) {
+            Position position = (Position) msg;
+            batchWriter.write(position.getDeviceId(), position, success -> {
+                if (!success) {
+                    LOGGER.warn("Failed to store position");
+                }
+                ctx.executor().execute(() -> ctx.fireChannelRead(position));
+            });
+        } else {
+            super.channelRead(ctx, msg);
+        }
     }
 
     @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2014 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,9 +22,15 @@ import org.traccar.BaseDataHandler;
 import org.traccar.Context;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
+import org.traccar.database.StatisticsManager;
 import org.traccar.helper.UnitsConverter;
 import org.traccar.model.Position;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @ChannelHandler.Sharable
 public class FilterHandler extends BaseDataHandler {
 
@@ -43,7 +49,51 @@ public class FilterHandler extends BaseDataHandler {
     private long skipLimit;
     private boolean skipAttributes;
 
+    private final StatisticsManager statisticsManager;
+
+    private interface Predicate {
+        boolean test(Position position, Position last);
+    }
+
+    /**
+     * Enabled filter. Skippable filters don't reject positions that exceed skip limit or contain skip attributes.
+     */
+    private static final class Filter {
+
+        private final String name;
+        private final String metric;
+        private final boolean skippable;
+        private final Predicate predicate;
+
+        private Filter(String name, boolean skippable, Predicate predicate) {
+            this.name = name;
+            this.metric = "filter." + name;
+            this.skippable = skippable;
+            this.predicate = predicate;
+        }
+    }
+
+    private static final class SkipAttributes {
+
+        private final String value;
+        private final String[] keys;
+
+        private SkipAttributes(String value) {
+            this.value = value;
+            this.keys = value.split("[ ,]");
+        }
+    }
+
+    private final Filter[] filters;
+
+    private final Map<Long, SkipAttributes> deviceSkipAttributes = new ConcurrentHashMap<>();
+
     public FilterHandler(Config config) {
+        this(config, null);
+    }
+
+    public FilterHandler(Config config, StatisticsManager statisticsManager) {
+        this.statisticsManager = statisticsManager;
         filterInvalid = config.getBoolean(Keys.FILTER_INVALID);
         filterZero = config.getBoolean(Keys.FILTER_ZERO);
         filterDuplicate = config.getBoolean(Keys.FILTER_DUPLICATE);
@@ -56,6 +106,39 @@ public class FilterHandler extends BaseDataHandler {
         filterMinPeriod = config.getInteger(Keys.FILTER_MIN_PERIOD) * 1000;
         skipLimit = config.getLong(Keys.FILTER_SKIP_LIMIT) * 1000;
         skipAttributes = config.getBoolean(Keys.FILTER_SKIP_ATTRIBUTES_ENABLE);
+
+        List<Filter> enabledFilters = new ArrayList<>();
+        if (filterInvalid) {
+            enabledFilters.add(new Filter("Invalid", false, (position, last) -> filterInvalid(position)));
+        }
+        if (filterZero) {
+            enabledFilters.add(new Filter("Zero", false, (position, last) -> filterZero(position)));
+        }
+        if (filterDuplicate) {
+            enabledFilters.add(new Filter("Duplicate", true, this::filterDuplicate));
+        }
+        if (filterFuture != 0) {
+            enabledFilters.add(new Filter("Future", false, (position, last) -> filterFuture(position)));
+        }
+        if (filterAccuracy != 0) {
+            enabledFilters.add(new Filter("Accuracy", false, (position, last) -> filterAccuracy(position)));
+        }
+        if (filterApproximate) {
+            enabledFilters.add(new Filter("Approximate", false, (position, last) -> filterApproximate(position)));
+        }
+        if (filterStatic) {
+            enabledFilters.add(new Filter("Static", true, (position, last) -> filterStatic(position)));
+        }
+        if (filterDistance != 0) {
+            enabledFilters.add(new Filter("Distance", true, this::filterDistance));
+        }
+        if (filterMaxSpeed != 0) {
+            enabledFilters.add(new Filter("MaxSpeed", false, this::filterMaxSpeed));
+        }
+        if (filterMinPeriod != 0) {
+            enabledFilters.add(new Filter("MinPeriod", false, this::filterMinPeriod));
+        }
+        filters = enabledFilters.toArray(new Filter[0]);
     }
 
     private boolean filterInvalid(Position position) {
@@ -127,11 +210,20 @@ public class FilterHandler extends BaseDataHandler {
         return false;
     }
 
+    public void removeDevice(long deviceId) {
+        deviceSkipAttributes.remove(deviceId);
+    }
+
     private boolean skipAttributes(Position position) {
         if (skipAttributes) {
-            String attributesString = Context.getIdentityManager().lookupAttributeString(
+            String value = Context.getIdentityManager().lookupAttributeString(
                     position.getDeviceId(), "filter.skipAttributes", "", false, true);
-            for (String attribute : attributesString.split("[ ,]")) {
+            SkipAttributes cached = deviceSkipAttributes.get(position.getDeviceId());
+            if (cached == null || !cached.value.equals(value)) {
+                cached = new SkipAttributes(value);
+                deviceSkipAttributes.put(position.getDeviceId(), cached);
+            }
+            for (String attribute : cached.keys) {
                 if (position.getAttributes().containsKey(attribute)) {
                     return true;
                 }
@@ -142,54 +234,32 @@ public class FilterHandler extends BaseDataHandler {
 
     private boolean filter(Position position) {
 
-        StringBuilder filterType = new StringBuilder();
+        if (filters.length == 0) {
+            return false;
+        }
 
         Position last = null;
         if (Context.getIdentityManager() != null) {
             last = Context.getIdentityManager().getLastPosition(position.getDeviceId());
         }
 
-        if (filterInvalid(position)) {
-            filterType.append("Invalid ");
-        }
-        if (filterZero(position)) {
-            filterType.append("Zero ");
-        }
-        if (filterDuplicate(position, last) && !skipLimit(position, last) && !skipAttributes(position)) {
-            filterType.append("Duplicate ");
-        }
-        if (filterFuture(position)) {
-            filterType.append("Future ");
-        }
-        if (filterAccuracy(position)) {
-            filterType.append("Accuracy ");
-        }
-        if (filterApproximate(position)) {
-            filterType.append("Approximate ");
-        }
-        if (filterStatic(position) && !skipLimit(position, last) && !skipAttributes(position)) {
-            filterType.append("Static ");
-        }
-        if (filterDistance(position, last) && !skipLimit(position, last) && !skipAttributes(position)) {
-            filterType.append("Distance ");
-        }
-        if (filterMaxSpeed(position, last)) {
-            filterType.append("MaxSpeed ");
-        }
-        if (filterMinPeriod(position, last)) {
-            filterType.append("MinPeriod ");
-        }
+        for (Filter filter : filters) {
+            if (filter.predicate.test(position, last)
+                    && (!filter.skippable || !skipLimit(position, last) && !skipAttributes(position))) {
 
-        if (filterType.length() > 0) {
+                if (statisticsManager != null) {
+                    statisticsManager.registerMetric(filter.metric, 1);
+                }
 
-            StringBuilder message = new StringBuilder();
-            message.append("Position filtered by ");
-            message.append(filterType.toString());
-            message.append("filters from device: ");
-            message.append(Context.getIdentityManager().getById(position.getDeviceId()).getUniqueId());
+                StringBuilder message = new StringBuilder();
+                message.append("Position filtered by ");
+                message.append(filter.name);
+                message.append(" filter from device: ");
+                message.append(Context.getIdentityManager().getById(position.getDeviceId()).getUniqueId());
 
-            LOGGER.info(message.toString());
-            return true;
+                LOGGER.info(message.toString());
+                return true;
+            }
         }
 
         return false;
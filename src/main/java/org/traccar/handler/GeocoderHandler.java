@@ -16,19 +16,18 @@
 package org.traccar.handler;
 
 import io.netty.channel.ChannelHandler;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.database.IdentityManager;
+import org.traccar.database.StatisticsManager;
 import org.traccar.geocoder.Geocoder;
 import org.traccar.model.Position;
 
 @ChannelHandler.Sharable
-public class GeocoderHandler extends ChannelInboundHandlerAdapter {
+public class GeocoderHandler extends BaseEnrichmentHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GeocoderHandler.class);
 
@@ -39,7 +38,8 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
     private final int geocoderReuseDistance;
 
     public GeocoderHandler(
-            Config config, Geocoder geocoder, IdentityManager identityManager) {
+            Config config, Geocoder geocoder, IdentityManager identityManager, StatisticsManager statisticsManager) {
+        super(config, statisticsManager, "geocoder");
         this.geocoder = geocoder;
         this.identityManager = identityManager;
         ignorePositions = Context.getConfig().getBoolean(Keys.GEOCODER_IGNORE_POSITIONS);
@@ -48,40 +48,36 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
     }
 
     @Override
-    public void channelRead(final ChannelHandlerContext ctx, Object message) {
-        if (message instanceof Position && !ignorePositions) {
-            final Position position = (Position) message;
-            if (processInvalidPositions || position.getValid()) {
-                if (geocoderReuseDistance != 0) {
-                    Position lastPosition = identityManager.getLastPosition(position.getDeviceId());
-                    if (lastPosition != null && lastPosition.getAddress() != null
-                            && position.getDouble(Position.KEY_DISTANCE) <= geocoderReuseDistance) {
-                        position.setAddress(lastPosition.getAddress());
-                        ctx.fireChannelRead(position);
-                        return;
-                    }
-                }
+    protected boolean requiresLookup(Position position) {
+        if (ignorePositions || !processInvalidPositions && !position.getValid()) {
+            return false;
+        }
+        if (geocoderReuseDistance != 0) {
+            Position lastPosition = identityManager.getLastPosition(position.getDeviceId());
+            if (lastPosition != null && lastPosition.getAddress() != null
+                    && position.getDouble(Position.KEY_DISTANCE) <= geocoderReuseDistance) {
+                position.setAddress(lastPosition.getAddress());
+                return false;
+            }
+        }
+        return true;
+    }
 
-                geocoder.getAddress(position.getLatitude(), position.getLongitude(),
-                        new Geocoder.ReverseGeocoderCallback() {
-                    @Override
-                    public void onSuccess(String address) {
-                        position.setAddress(address);
-                        ctx.fireChannelRead(position);
-                    }
+    @Override
+    protected void lookup(Position position, Runnable completion) {
+        geocoder.getAddress(position.getLatitude(), position.getLongitude(), new Geocoder.ReverseGeocoderCallback() {
+            @Override
+            public void onSuccess(String address) {
+                position.setAddress(address);
+                completion.run();
+            }
 
-                    @Override
-                    public void onFailure(Throwable e) {
-                        LOGGER.warn("Geocoding failed", e);
-                        ctx.fireChannelRead(position);
-                    }
-                });
-            } else {
-                ctx.fireChannelRead(position);
+            @Override
+            public void onFailure(Throwable e) {
+                LOGGER.warn("Geocoding failed", e);
+                completion.run();
             }
-        } else {
-            ctx.fireChannelRead(message);
-        }
+        });
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,6 @@
 package org.traccar.handler;
 
 import io.netty.channel.ChannelHandler;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
@@ -27,7 +25,7 @@ import org.traccar.geolocation.GeolocationProvider;
 import org.traccar.model.Position;
 
 @ChannelHandler.Sharable
-public class GeolocationHandler extends ChannelInboundHandlerAdapter {
+public class GeolocationHandler extends BaseEnrichmentHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GeolocationHandler.class);
 
@@ -37,49 +35,45 @@ public class GeolocationHandler extends ChannelInboundHandlerAdapter {
 
     public GeolocationHandler(
             Config config, GeolocationProvider geolocationProvider, StatisticsManager statisticsManager) {
+        super(config, statisticsManager, "geolocation");
         this.geolocationProvider = geolocationProvider;
         this.statisticsManager = statisticsManager;
         this.processInvalidPositions = config.getBoolean(Keys.GEOLOCATION_PROCESS_INVALID_POSITIONS);
     }
 
     @Override
-    public void channelRead(final ChannelHandlerContext ctx, Object message) {
-        if (message instanceof Position) {
-            final Position position = (Position) message;
-            if ((position.getOutdated() || processInvalidPositions && !position.getValid())
-                    && position.getNetwork() != null) {
-                if (statisticsManager != null) {
-                    statisticsManager.registerGeolocationRequest();
-                }
+    protected boolean requiresLookup(Position position) {
+        return (position.getOutdated() || processInvalidPositions && !position.getValid())
+                && position.getNetwork() != null;
+    }
+
+    @Override
+    protected void lookup(Position position, Runnable completion) {
+        if (statisticsManager != null) {
+            statisticsManager.registerGeolocationRequest();
+        }
 
-                geolocationProvider.getLocation(position.getNetwork(),
-                        new GeolocationProvider.LocationProviderCallback() {
-                    @Override
-                    public void onSuccess(double latitude, double longitude, double accuracy) {
-                        position.set(Position.KEY_APPROXIMATE, true);
-                        position.setValid(true);
-                        position.setFixTime(position.getDeviceTime());
-                        position.setLatitude(latitude);
-                        position.setLongitude(longitude);
-                        position.setAccuracy(accuracy);
-                        position.setAltitude(0);
-                        position.setSpeed(0);
-                        position.setCourse(0);
-                        ctx.fireChannelRead(position);
-                    }
+        geolocationProvider.getLocation(position.getNetwork(), new GeolocationProvider.LocationProviderCallback() {
+            @Override
+            public void onSuccess(double latitude, double longitude, double accuracy) {
+                position.set(Position.KEY_APPROXIMATE, true);
+                position.setValid(true);
+                position.setFixTime(position.getDeviceTime());
+                position.setLatitude(latitude);
+                position.setLongitude(longitude);
+                position.setAccuracy(accuracy);
+                position.setAltitude(0);
+                position.setSpeed(0);
+                position.setCourse(0);
+                completion.run();
+            }
 
-                    @Override
-                    public void onFailure(Throwable e) {
-                        LOGGER.warn("Geolocation network error", e);
-                        ctx.fireChannelRead(position);
-                    }
-                });
-            } else {
-                ctx.fireChannelRead(position);
+            @Override
+            public void onFailure(Throwable e) {
+                LOGGER.warn("Geolocation network error", e);
+                completion.run();
             }
-        } else {
-            ctx.fireChannelRead(message);
-        }
+        });
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2020 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,45 +16,47 @@
 package org.traccar.handler;
 
 import io.netty.channel.ChannelHandler;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.database.StatisticsManager;
 import org.traccar.model.Position;
 import org.traccar.speedlimit.SpeedLimitProvider;
 
 @ChannelHandler.Sharable
-public class SpeedLimitHandler extends ChannelInboundHandlerAdapter {
+public class SpeedLimitHandler extends BaseEnrichmentHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SpeedLimitHandler.class);
 
     private final SpeedLimitProvider speedLimitProvider;
 
-    public SpeedLimitHandler(SpeedLimitProvider speedLimitProvider) {
+    public SpeedLimitHandler(
+            Config config, SpeedLimitProvider speedLimitProvider, StatisticsManager statisticsManager) {
+        super(config, statisticsManager, "speedLimit");
         this.speedLimitProvider = speedLimitProvider;
     }
 
     @Override
-    public void channelRead(final ChannelHandlerContext ctx, Object message) {
-        if (message instanceof Position) {
-            final Position position = (Position) message;
-            speedLimitProvider.getSpeedLimit(position.getLatitude(), position.getLongitude(),
-                    new SpeedLimitProvider.SpeedLimitProviderCallback() {
-                @Override
-                public void onSuccess(double speedLimit) {
-                    position.set(Position.KEY_SPEED_LIMIT, speedLimit);
-                    ctx.fireChannelRead(position);
-                }
-
-                @Override
-                public void onFailure(Throwable e) {
-                    LOGGER.warn("Speed limit provider failed", e);
-                    ctx.fireChannelRead(position);
-                }
-            });
-        } else {
-            ctx.fireChannelRead(message);
-        }
+    protected boolean requiresLookup(Position position) {
+        return true;
+    }
+
+    @Override
+    protected void lookup(Position position, Runnable completion) {
+        speedLimitProvider.getSpeedLimit(position.getLatitude(), position.getLongitude(),
+                new SpeedLimitProvider.SpeedLimitProviderCallback() {
+            @Override
+            public void onSuccess(double speedLimit) {
+                position.set(Position.KEY_SPEED_LIMIT, speedLimit);
+                completion.run();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                LOGGER.warn("Speed limit provider failed", e);
+                completion.run();
+            }
+        });
     }
 
 }
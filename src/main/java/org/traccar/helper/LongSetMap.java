@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable map from id to a set of ids. Uses open addressing with primitive keys, so no boxed values are kept after
+ * the map is built. Instances are created using {@link Builder}.
+ */
+public final class LongSetMap {
+
+    public static final LongSetMap EMPTY = new Builder().build();
+
+    private final long[] keys;
+    private final SortedLongSet[] values;
+    private final int size;
+
+    private LongSetMap(long[] keys, SortedLongSet[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    public SortedLongSet get(long key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            if (values[i] == null) {
+                return SortedLongSet.EMPTY;
+            } else if (keys[i] == key) {
+                return values[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public static final class Builder {
+
+        private static final class Values {
+            private long[] data = new long[4];
+            private int length;
+
+            private void add(long value) {
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, length * 2);
+                }
+                data[length++] = value;
+            }
+        }
+
+        private final Map<Long, Values> items = new HashMap<>();
+
+        public Builder add(long key, long value) {
+            items.computeIfAbsent(key, k -> new Values()).add(value);
+            return this;
+        }
+
+        public LongSetMap build() {
+            int capacity = Integer.highestOneBit(Math.max(items.size(), 1) * 2 - 1) << 1;
+            long[] keys = new long[capacity];
+            SortedLongSet[] values = new SortedLongSet[capacity];
+            int mask = capacity - 1;
+            for (Map.Entry<Long, Values> entry : items.entrySet()) {
+                long key = entry.getKey();
+                int i = hash(key) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = SortedLongSet.of(entry.getValue().data, entry.getValue().length);
+            }
+            return new LongSetMap(keys, values, items.size());
+        }
+
+    }
+
+}
@@ -19,18 +19,20 @@ package org.traccar.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import net.fortuna.ical4j.data.CalendarBuilder;
 import net.fortuna.ical4j.data.ParserException;
-import net.fortuna.ical4j.filter.Filter;
-import net.fortuna.ical4j.filter.PeriodRule;
 import net.fortuna.ical4j.model.DateTime;
 import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.component.CalendarComponent;
 import org.traccar.database.QueryIgnore;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.time.Duration;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Calendar extends ExtendedModel {
 
@@ -53,6 +55,7 @@ public class Calendar extends ExtendedModel {
     public void setData(byte[] data) throws IOException, ParserException {
         CalendarBuilder builder = new CalendarBuilder();
         calendar = builder.build(new ByteArrayInputStream(data));
+        occurrences = null;
         this.data = data.clone();
     }
 
@@ -64,12 +67,105 @@ public class Calendar extends ExtendedModel {
         return calendar;
     }
 
+    private static final long WINDOW_BEFORE = TimeUnit.DAYS.toMillis(1);
+    private static final long WINDOW_AFTER = TimeUnit.DAYS.toMillis(30);
+    private static final long WINDOW_MAX = TimeUnit.DAYS.toMillis(400);
+
+    /**
+     * Event occurrences within a time window, merged into sorted non-overlapping intervals. Interval ends are
+     * inclusive.
+     */
+    private static final class Occurrences {
+
+        private final long from;
+        private final long to;
+        private final long[] starts;
+        private final long[] ends;
+
+        private Occurrences(long from, long to, long[] starts, long[] ends) {
+            this.from = from;
+            this.to = to;
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        private boolean covers(long time) {
+            return time >= from && time < to;
+        }
+
+        private void addIntervals(List<long[]> intervals) {
+            for (int i = 0; i < starts.length; i++) {
+                intervals.add(new long[] {starts[i], ends[i]});
+            }
+        }
+
+        private boolean contains(long time) {
+            int index = Arrays.binarySearch(starts, time);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index >= 0 && time <= ends[index];
+        }
+
+    }
+
+    private volatile Occurrences occurrences;
+
+    private Occurrences compileOccurrences(long from, long to, Occurrences adjacent) {
+        Period window = new Period(new DateTime(from), new DateTime(to));
+        List<long[]> intervals = new ArrayList<>();
+        for (CalendarComponent component : calendar.getComponents(CalendarComponent.VEVENT)) {
+            // ical4j includes the end of recurring instances, but not the end of a single event
+            long endOffset = component.getProperty(Property.RRULE) != null ? 0 : 1;
+            for (Period period : component.calculateRecurrenceSet(window)) {
+                intervals.add(new long[] {period.getStart().getTime(), period.getEnd().getTime() - endOffset});
+            }
+        }
+        if (adjacent != null) {
+            adjacent.addIntervals(intervals);
+            from = Math.min(from, adjacent.from);
+            to = Math.max(to, adjacent.to);
+        }
+        intervals.sort(Comparator.comparingLong(interval -> interval[0]));
+
+        long[] starts = new long[intervals.size()];
+        long[] ends = new long[intervals.size()];
+        int count = 0;
+        for (long[] interval : intervals) {
+            if (count > 0 && interval[0] <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], interval[1]);
+            } else {
+                starts[count] = interval[0];
+                ends[count] = interval[1];
+                count += 1;
+            }
+        }
+        return new Occurrences(from, to, Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+
+    /**
+     * Check if any event is active at the given moment. Occurrences are expanded for a window around the requested
+     * time and reused for subsequent checks. When a moment outside of the window is requested, only the missing part
+     * is expanded and merged into the window, unless the window would grow too large, then it is moved instead.
+     */
     public boolean checkMoment(Date date) {
         if (calendar != null) {
-            Period period = new Period(new DateTime(date), Duration.ZERO);
-            Filter<CalendarComponent> filter = new Filter<>(new PeriodRule<>(period));
-            Collection<CalendarComponent> events = filter.filter(calendar.getComponents(CalendarComponent.VEVENT));
-            return events != null && !events.isEmpty();
+            long time = date.getTime();
+            time -= Math.floorMod(time, 1000L); // ical4j date time precision is one second
+            Occurrences current = occurrences;
+            if (current == null || !current.covers(time)) {
+                long from = time - WINDOW_BEFORE;
+                long to = time + WINDOW_AFTER;
+                if (current != null && Math.max(to, current.to) - Math.min(from, current.from) <= WINDOW_MAX) {
+                    current = time < current.from
+                            ? compileOccurrences(from, current.from, current)
+                            : compileOccurrences(current.to, to, current);
+                } else {
+                    current = compileOccurrences(from, to, null);
+                }
+                occurrences = current;
+            }
+            return current.contains(time);
         }
         return false;
     }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metric aggregated without locking, because many metrics are updated for every message or request. Values read
+ * during concurrent updates can be slightly inconsistent with each other.
+ */
+public class Metric {
+
+    private final LongAdder count = new LongAdder();
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    private final LongAdder total = new LongAdder();
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public long getMax() {
+        return max.get();
+    }
+
+    private volatile long last;
+
+    public long getLast() {
+        return last;
+    }
+
+    public double getAverage() {
+        long currentCount = count.sum();
+        return currentCount > 0 ? (double) total.sum() / currentCount : 0;
+    }
+
+    public void update(long value) {
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+        last = value;
+    }
+
+}
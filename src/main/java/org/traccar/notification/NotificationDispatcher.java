@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.GlobalTimer;
+import org.traccar.Main;
+import org.traccar.database.StatisticsManager;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends messages of one notification channel using a bounded worker pool. Messages above the queue capacity are
+ * dropped. Messages failed with network errors or timeouts are retried with exponential backoff and the send rate
+ * can be limited.
+ */
+public class NotificationDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    public interface Task {
+        void run() throws MessageException, InterruptedException;
+    }
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final long interval;
+    private final int retries;
+    private final long retryDelay;
+
+    private long nextSend;
+
+    /**
+     * @param name channel name used for threads and metrics
+     * @param threads maximum number of worker threads
+     * @param queue maximum number of waiting messages
+     * @param rateLimit maximum number of messages per second, 0 for no limit
+     * @param retries number of retries after failure
+     * @param retryDelay delay before the first retry in milliseconds
+     */
+    public NotificationDispatcher(String name, int threads, int queue, int rateLimit, int retries, long retryDelay) {
+        this.name = name;
+        this.interval = rateLimit > 0 ? TimeUnit.SECONDS.toNanos(1) / rateLimit : 0;
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "notificator-" + name + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        int poolSize = Math.max(threads, 1);
+        executor = new ThreadPoolExecutor(
+                poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(queue, 1)), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void dispatch(Task task) {
+        submit(task, 0, System.currentTimeMillis());
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void registerMetric(String key, long value) {
+        if (Main.getInjector() != null) {
+            Main.getInjector().getInstance(StatisticsManager.class)
+                    .registerMetric("notificator." + name + "." + key, value);
+        }
+    }
+
+    private void submit(Task task, int attempt, long queueTime) {
+        try {
+            executor.execute(() -> run(task, attempt, queueTime));
+            registerMetric("queue", executor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Notification queue for {} is full, message dropped", name);
+            registerMetric("dropped", 1);
+        }
+    }
+
+    private void acquire() throws InterruptedException {
+        if (interval > 0) {
+            long delay;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long slot = Math.max(nextSend, now);
+                nextSend = slot + interval;
+                delay = slot - now;
+            }
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Only network errors and timeouts are worth retrying, other failures would fail again the same way.
+     */
+    private static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void run(Task task, int attempt, long queueTime) {
+        try {
+            acquire();
+            task.run();
+            registerMetric("latency", System.currentTimeMillis() - queueTime);
+        } catch (MessageException error) {
+            if (attempt < retries && isTransient(error)) {
+                registerMetric("retried", 1);
+                GlobalTimer.getTimer().newTimeout(
+                        timeout -> submit(task, attempt + 1, queueTime),
+                        retryDelay << attempt, TimeUnit.MILLISECONDS);
+            } else {
+                registerMetric("failed", 1);
+                LOGGER.warn("Event send error", error);
+            }
+        } catch (RuntimeException error) {
+            registerMetric("failed", 1);
+            LOGGER.warn("Event send error", error);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2018 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2018 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -20,10 +20,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.model.Typed;
 import org.traccar.notificators.NotificatorFirebase;
 import org.traccar.notificators.NotificatorMail;
@@ -42,6 +45,7 @@ public final class NotificatorManager {
     private static final Notificator NULL_NOTIFICATOR = new NotificatorNull();
 
     private final Map<String, Notificator> notificators = new HashMap<>();
+    private final Map<String, NotificationDispatcher> dispatchers = new ConcurrentHashMap<>();
 
     public NotificatorManager() {
         final String[] types = Context.getConfig().getString("notificator.types", "").split(",");
@@ -75,13 +79,37 @@ public final class NotificatorManager {
             final String className = Context.getConfig()
                     .getString("notificator." + type + ".class", defaultNotificator);
             try {
-                notificators.put(type, (Notificator) Class.forName(className).newInstance());
+                Notificator notificator = (Notificator) Class.forName(className).newInstance();
+                notificator.setDispatcher(getDispatcher(type));
+                notificators.put(type, notificator);
             } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
                 LOGGER.warn("Unable to load notificator class for " + type + " " + className + " " + e.getMessage());
             }
         }
     }
 
+    /**
+     * Returns shared dispatcher for the channel. Each channel has its own worker pool, queue, rate limit and retry
+     * settings, which can be overridden using 'notificator.{channel}.*' keys.
+     */
+    public NotificationDispatcher getDispatcher(String channel) {
+        return dispatchers.computeIfAbsent(channel, key -> {
+            Config config = Context.getConfig();
+            String prefix = "notificator." + channel;
+            return new NotificationDispatcher(
+                    channel,
+                    config.getInteger(Keys.NOTIFICATOR_TYPE_THREADS.withPrefix(prefix),
+                            config.getInteger(Keys.NOTIFICATOR_THREADS)),
+                    config.getInteger(Keys.NOTIFICATOR_TYPE_QUEUE.withPrefix(prefix),
+                            config.getInteger(Keys.NOTIFICATOR_QUEUE)),
+                    config.getInteger(Keys.NOTIFICATOR_TYPE_RATE_LIMIT.withPrefix(prefix),
+                            config.getInteger(Keys.NOTIFICATOR_RATE_LIMIT)),
+                    config.getInteger(Keys.NOTIFICATOR_TYPE_RETRIES.withPrefix(prefix),
+                            config.getInteger(Keys.NOTIFICATOR_RETRIES)),
+                    config.getLong(Keys.NOTIFICATOR_RETRY_DELAY));
+        });
+    }
+
     public Notificator getNotificator(String type) {
         final Notificator notificator = notificators.get(type);
         if (notificator == null) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2018 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2018 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -21,19 +21,43 @@ import org.slf4j.LoggerFactory;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 import org.traccar.notification.MessageException;
+import org.traccar.notification.NotificationDispatcher;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Response;
 
 public abstract class Notificator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Notificator.class);
 
+    private NotificationDispatcher dispatcher;
+
+    public void setDispatcher(NotificationDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     public void sendAsync(final long userId, final Event event, final Position position) {
-        new Thread(() -> {
+        if (dispatcher != null) {
+            dispatcher.dispatch(() -> sendSync(userId, event, position));
+        } else {
             try {
                 sendSync(userId, event, position);
             } catch (MessageException | InterruptedException error) {
                 LOGGER.warn("Event send error", error);
             }
-        }).start();
+        }
+    }
+
+    protected void post(Invocation.Builder request, Entity<?> entity) throws MessageException {
+        try (Response response = request.post(entity)) {
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new MessageException("Unexpected response status " + response.getStatus());
+            }
+        } catch (ProcessingException e) {
+            throw new MessageException(e);
+        }
     }
 
     public abstract void sendSync(long userId, Event event, Position position)
@@ -17,22 +17,18 @@
 package org.traccar.notificators;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.traccar.Context;
 import org.traccar.model.User;
 import org.traccar.config.Keys;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
+import org.traccar.notification.MessageException;
 import org.traccar.notification.NotificationFormatter;
 
 import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.InvocationCallback;
 
 public class NotificatorTelegram extends Notificator {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(NotificatorTelegram.class);
-
     private final String urlSendText;
     private final String urlSendLocation;
     private final String chatId;
@@ -71,18 +67,8 @@ public class NotificatorTelegram extends Notificator {
         sendLocation = Context.getConfig().getBoolean(Keys.NOTIFICATOR_TELEGRAM_SEND_LOCATION);
     }
 
-    private void executeRequest(String url, Object message) {
-        Context.getClient().target(url).request()
-                .async().post(Entity.json(message), new InvocationCallback<Object>() {
-            @Override
-            public void completed(Object o) {
-            }
-
-            @Override
-            public void failed(Throwable throwable) {
-                LOGGER.warn("Telegram API error", throwable);
-            }
-        });
+    private void executeRequest(String url, Object message) throws MessageException {
+        post(Context.getClient().target(url).request(), Entity.json(message));
     }
 
     private LocationMessage createLocationMessage(String messageChatId, Position position) {
@@ -96,7 +82,7 @@ public class NotificatorTelegram extends Notificator {
     }
 
     @Override
-    public void sendSync(long userId, Event event, Position position) {
+    public void sendSync(long userId, Event event, Position position) throws MessageException {
         User user = Context.getPermissionsManager().getUser(userId);
         TextMessage message = new TextMessage();
         message.chatId = user.getString("telegramChatId");
@@ -110,9 +96,4 @@ public class NotificatorTelegram extends Notificator {
         }
     }
 
-    @Override
-    public void sendAsync(long userId, Event event, Position position) {
-        sendSync(userId, event, position);
-    }
-
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes per-device report calculations in parallel. Results are returned in the order of device ids. If any device
+ * fails or the calling thread is interrupted, remaining calculations are cancelled.
+ */
+public class ReportExecutor {
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    public interface DeviceTask<T> {
+        T execute(long deviceId) throws SQLException;
+    }
+
+    private final ExecutorService executor;
+    private final int userThreads;
+    private final Map<Long, Semaphore> userPermits = new ConcurrentHashMap<>();
+
+    public ReportExecutor(Config config) {
+        int poolSize = config.getInteger(Keys.DATABASE_MAX_POOL_SIZE, DEFAULT_POOL_SIZE);
+        int threads = config.getInteger(Keys.REPORT_THREADS, Math.max(poolSize / 2, 1));
+        userThreads = Math.max(config.getInteger(Keys.REPORT_USER_THREADS), 1);
+        if (threads > 1) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "report-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    public <T> List<T> execute(long userId, Collection<Long> deviceIds, DeviceTask<T> task) throws SQLException {
+        List<T> results = new ArrayList<>(deviceIds.size());
+        if (executor == null || deviceIds.size() <= 1) {
+            for (long deviceId : deviceIds) {
+                results.add(task.execute(deviceId));
+            }
+            return results;
+        }
+
+        Semaphore permits = userPermits.computeIfAbsent(userId, key -> new Semaphore(userThreads));
+        AtomicBoolean failed = new AtomicBoolean();
+        List<FutureTask<T>> futures = new ArrayList<>(deviceIds.size());
+        try {
+            for (long deviceId : deviceIds) {
+                if (failed.get()) {
+                    break;
+                }
+                permits.acquire();
+                FutureTask<T> future = new FutureTask<T>(() -> {
+                    if (failed.get()) {
+                        return null;
+                    }
+                    try {
+                        return task.execute(deviceId);
+                    } catch (SQLException | RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }) {
+                    @Override
+                    protected void done() {
+                        permits.release();
+                    }
+                };
+                futures.add(future);
+                executor.execute(future);
+            }
+            for (FutureTask<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Report interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException(cause);
+        } finally {
+            for (FutureTask<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 - 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -318,13 +318,44 @@ public final class ReportUtils {
             IdentityManager identityManager, DeviceManager deviceManager,
             Collection<Position> positionCollection,
             TripsConfig tripsConfig, boolean ignoreOdometer, Class<T> reportClass) {
+        return detectTripsAndStops(
+                identityManager, deviceManager, positionCollection, tripsConfig, ignoreOdometer, reportClass, true);
+    }
 
-        Collection<T> result = new ArrayList<>();
+    /**
+     * Detect trips or stops. If incomplete ones are not included, result contains only trips and stops that are
+     * confirmed by a motion event before the last position, so they can't change when more positions arrive.
+     */
+    public static <T extends BaseReport> List<T> detectTripsAndStops(
+            IdentityManager identityManager, DeviceManager deviceManager,
+            Collection<Position> positionCollection,
+            TripsConfig tripsConfig, boolean ignoreOdometer, Class<T> reportClass, boolean includeIncomplete) {
+        List<T> result = new ArrayList<>();
+        detectTripsAndStops(new MotionEventHandler(identityManager, deviceManager, tripsConfig),
+                new ArrayList<>(positionCollection), tripsConfig, ignoreOdometer, reportClass,
+                includeIncomplete, result);
+        return result;
+    }
 
-        ArrayList<Position> positions = new ArrayList<>(positionCollection);
+    /**
+     * Detect only trips and stops confirmed by a motion event before the last position and return index of the last
+     * settled position, or -1 if there is none. At a settled position no motion change is pending and no trip or stop
+     * after the first position is open, so detection restarted from it finds the same later trips and stops.
+     */
+    public static <T extends BaseReport> int detectClosedTripsAndStops(
+            IdentityManager identityManager, DeviceManager deviceManager, List<Position> positions,
+            TripsConfig tripsConfig, boolean ignoreOdometer, Class<T> reportClass, List<T> result) {
+        return detectTripsAndStops(new MotionEventHandler(identityManager, deviceManager, tripsConfig),
+                new ArrayList<>(positions), tripsConfig, ignoreOdometer, reportClass, false, result);
+    }
+
+    private static <T extends BaseReport> int detectTripsAndStops(
+            MotionEventHandler motionHandler, ArrayList<Position> positions, TripsConfig tripsConfig,
+            boolean ignoreOdometer, Class<T> reportClass, boolean includeIncomplete, List<T> result) {
+
+        int settledIndex = -1;
         if (!positions.isEmpty()) {
             boolean trips = reportClass.equals(TripReport.class);
-            MotionEventHandler  motionHandler = new MotionEventHandler(identityManager, deviceManager, tripsConfig);
             DeviceState deviceState = new DeviceState();
             deviceState.setMotionState(isMoving(positions, 0, tripsConfig));
             int startEventIndex = trips == deviceState.getMotionState() ? 0 : -1;
@@ -350,19 +381,24 @@ public final class ReportUtils {
                 }
                 if (startEventIndex != -1 && startNoEventIndex != -1 && event != null
                         && trips != deviceState.getMotionState()) {
-                    result.add(calculateTripOrStop(positions, startEventIndex, startNoEventIndex,
-                            ignoreOdometer, reportClass));
+                    if (includeIncomplete || i < positions.size() - 1) {
+                        result.add(calculateTripOrStop(positions, startEventIndex, startNoEventIndex,
+                                ignoreOdometer, reportClass));
+                    }
                     startEventIndex = -1;
                 }
+                if (deviceState.getMotionPosition() == null && startEventIndex <= 0) {
+                    settledIndex = i;
+                }
             }
-            if (startEventIndex != -1 && (startNoEventIndex != -1 || !trips)) {
+            if (includeIncomplete && startEventIndex != -1 && (startNoEventIndex != -1 || !trips)) {
                 result.add(calculateTripOrStop(positions, startEventIndex,
                             startNoEventIndex != -1 ? startNoEventIndex : positions.size() - 1,
                             ignoreOdometer, reportClass));
             }
         }
 
-        return result;
+        return settledIndex;
     }
 
 }
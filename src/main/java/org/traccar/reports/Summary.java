@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2021 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -31,42 +31,55 @@ import org.traccar.Context;
 import org.traccar.helper.UnitsConverter;
 import org.traccar.model.Position;
 import org.traccar.reports.model.SummaryReport;
+import org.traccar.reports.model.SummaryRollup;
 
 public final class Summary {
 
     private Summary() {
     }
 
-    private static SummaryReport calculateSummaryResult(long deviceId, Collection<Position> positions) {
+    private static final class Accumulator {
+
+        private Position firstPosition;
+        private Position lastPosition;
+        private double maxSpeed;
+
+        private void add(Position first, Position last, double speed) {
+            if (firstPosition == null) {
+                firstPosition = first;
+            }
+            lastPosition = last;
+            maxSpeed = Math.max(maxSpeed, speed);
+        }
+
+        private void add(Position position) {
+            add(position, position, position.getSpeed());
+        }
+
+    }
+
+    private static SummaryReport calculateSummaryResult(long deviceId, Accumulator accumulator) {
         SummaryReport result = new SummaryReport();
         result.setDeviceId(deviceId);
         result.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
-        if (positions != null && !positions.isEmpty()) {
-            Position firstPosition = null;
-            Position previousPosition = null;
-            for (Position position : positions) {
-                if (firstPosition == null) {
-                    firstPosition = position;
-                }
-                previousPosition = position;
-                if (position.getSpeed() > result.getMaxSpeed()) {
-                    result.setMaxSpeed(position.getSpeed());
-                }
-            }
+        Position firstPosition = accumulator.firstPosition;
+        Position lastPosition = accumulator.lastPosition;
+        if (firstPosition != null) {
+            result.setMaxSpeed(accumulator.maxSpeed);
             boolean ignoreOdometer = Context.getDeviceManager()
                     .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
-            result.setDistance(ReportUtils.calculateDistance(firstPosition, previousPosition, !ignoreOdometer));
-            result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, previousPosition));
+            result.setDistance(ReportUtils.calculateDistance(firstPosition, lastPosition, !ignoreOdometer));
+            result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, lastPosition));
 
             long durationMilliseconds;
             if (firstPosition.getAttributes().containsKey(Position.KEY_HOURS)
-                    && previousPosition.getAttributes().containsKey(Position.KEY_HOURS)) {
+                    && lastPosition.getAttributes().containsKey(Position.KEY_HOURS)) {
                 durationMilliseconds =
-                        previousPosition.getLong(Position.KEY_HOURS) - firstPosition.getLong(Position.KEY_HOURS);
+                        lastPosition.getLong(Position.KEY_HOURS) - firstPosition.getLong(Position.KEY_HOURS);
                 result.setEngineHours(durationMilliseconds);
             } else {
                 durationMilliseconds =
-                        previousPosition.getFixTime().getTime() - firstPosition.getFixTime().getTime();
+                        lastPosition.getFixTime().getTime() - firstPosition.getFixTime().getTime();
             }
 
             if (durationMilliseconds > 0) {
@@ -76,46 +89,83 @@ public final class Summary {
 
             if (!ignoreOdometer
                     && firstPosition.getDouble(Position.KEY_ODOMETER) != 0
-                    && previousPosition.getDouble(Position.KEY_ODOMETER) != 0) {
+                    && lastPosition.getDouble(Position.KEY_ODOMETER) != 0) {
                 result.setStartOdometer(firstPosition.getDouble(Position.KEY_ODOMETER));
-                result.setEndOdometer(previousPosition.getDouble(Position.KEY_ODOMETER));
+                result.setEndOdometer(lastPosition.getDouble(Position.KEY_ODOMETER));
             } else {
                 result.setStartOdometer(firstPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
-                result.setEndOdometer(previousPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+                result.setEndOdometer(lastPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
             }
 
             result.setStartTime(firstPosition.getFixTime());
-            result.setEndTime(previousPosition.getFixTime());
+            result.setEndTime(lastPosition.getFixTime());
         }
         return result;
     }
 
-    private static int getDay(long userId, Date date) {
-        Calendar calendar = Calendar.getInstance(ReportUtils.getTimezone(userId));
-        calendar.setTime(date);
-        return calendar.get(Calendar.DAY_OF_MONTH);
+    private static void addPositions(
+            Accumulator accumulator, long deviceId, long from, long to) throws SQLException {
+        if (from < to) {
+            try {
+                Context.getDataManager().getPositions(
+                        deviceId, new Date(from), new Date(to - 1), accumulator::add);
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        }
+    }
+
+    /**
+     * Aggregate positions between given times, end time is exclusive. Full hours are taken from rollups if available.
+     */
+    private static Accumulator aggregate(long deviceId, long from, long to) throws SQLException {
+        Accumulator accumulator = new Accumulator();
+        Date coveredTime = SummaryStore.isEnabled() ? SummaryStore.getCoveredTime() : null;
+        if (coveredTime != null) {
+            long period = SummaryStore.PERIOD;
+            long rollupFrom = from + Math.floorMod(-from, period);
+            long rollupTo = Math.min(to, coveredTime.getTime());
+            rollupTo -= Math.floorMod(rollupTo, period);
+            if (rollupFrom < rollupTo) {
+                addPositions(accumulator, deviceId, from, rollupFrom);
+                for (SummaryRollup rollup : Context.getDataManager().getSummaryRollups(
+                        deviceId, new Date(rollupFrom), new Date(rollupTo))) {
+                    accumulator.add(
+                            SummaryStore.getFirstPosition(rollup), SummaryStore.getLastPosition(rollup),
+                            rollup.getMaxSpeed());
+                }
+                addPositions(accumulator, deviceId, rollupTo, to);
+                return accumulator;
+            }
+        }
+        addPositions(accumulator, deviceId, from, to);
+        return accumulator;
     }
 
     private static Collection<SummaryReport> calculateSummaryResults(
             long userId, long deviceId, Date from, Date to, boolean daily) throws SQLException {
 
-        ArrayList<Position> positions = new ArrayList<>(Context.getDataManager().getPositions(deviceId, from, to));
-
         ArrayList<SummaryReport> results = new ArrayList<>();
-        if (daily && !positions.isEmpty()) {
-            int startIndex = 0;
-            int startDay = getDay(userId, positions.iterator().next().getFixTime());
-            for (int i = 0; i < positions.size(); i++) {
-                int currentDay = getDay(userId, positions.get(i).getFixTime());
-                if (currentDay != startDay) {
-                    results.add(calculateSummaryResult(deviceId, positions.subList(startIndex, i)));
-                    startIndex = i;
-                    startDay = currentDay;
+        if (daily) {
+            Calendar calendar = Calendar.getInstance(ReportUtils.getTimezone(userId));
+            calendar.setTime(from);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            long dayStart = from.getTime();
+            while (dayStart <= to.getTime()) {
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                long dayEnd = Math.min(calendar.getTimeInMillis(), to.getTime() + 1);
+                Accumulator accumulator = aggregate(deviceId, dayStart, dayEnd);
+                if (accumulator.firstPosition != null) {
+                    results.add(calculateSummaryResult(deviceId, accumulator));
                 }
+                dayStart = dayEnd;
             }
-            results.add(calculateSummaryResult(deviceId, positions.subList(startIndex, positions.size())));
-        } else {
-            results.add(calculateSummaryResult(deviceId, positions));
+        }
+        if (results.isEmpty()) {
+            results.add(calculateSummaryResult(deviceId, aggregate(deviceId, from.getTime(), to.getTime() + 1)));
         }
 
         return results;
@@ -124,10 +174,14 @@ public final class Summary {
     public static Collection<SummaryReport> getObjects(long userId, Collection<Long> deviceIds,
             Collection<Long> groupIds, Date from, Date to, boolean daily) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<SummaryReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
+        Collection<Long> devices = ReportUtils.getDeviceList(deviceIds, groupIds);
+        for (long deviceId: devices) {
             Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(calculateSummaryResults(userId, deviceId, from, to, daily));
+        }
+        ArrayList<SummaryReport> result = new ArrayList<>();
+        for (Collection<SummaryReport> items : Context.getReportExecutor().execute(
+                userId, devices, deviceId -> calculateSummaryResults(userId, deviceId, from, to, daily))) {
+            result.addAll(items);
         }
         return result;
     }
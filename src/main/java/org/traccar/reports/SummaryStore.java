@@ -0,0 +1,173 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.Context;
+import org.traccar.config.Keys;
+import org.traccar.database.DataManager;
+import org.traccar.model.Position;
+import org.traccar.reports.model.SummaryRollup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hourly summary rollups. Positions are added to rollups in the order of their ids, so positions that arrive late
+ * update rollups of past hours as well. Hourly periods can be combined into days in any timezone with a whole hour
+ * offset, other boundaries are calculated from positions.
+ * <p>
+ * Concurrent writers can commit positions out of id order, so recently received positions are scanned again on the
+ * next update. Adding the same position to a rollup more than once doesn't change it.
+ */
+public final class SummaryStore {
+
+    public static final long PERIOD = TimeUnit.HOURS.toMillis(1);
+
+    private static final int BATCH_SIZE = 10000;
+    private static final int MAX_BATCHES = 100;
+    private static final long COMMIT_LAG = TimeUnit.MINUTES.toMillis(2);
+
+    private static final String[] KEYS = {
+            Position.KEY_ODOMETER, Position.KEY_TOTAL_DISTANCE, Position.KEY_FUEL_LEVEL, Position.KEY_HOURS};
+
+    private static long processedId = -1;
+    private static volatile Date coveredTime;
+
+    private SummaryStore() {
+    }
+
+    public static boolean isEnabled() {
+        return Context.getConfig().getBoolean(Keys.REPORT_SUMMARY_STORE);
+    }
+
+    /**
+     * Returns time before which all stored positions are included in rollups or null if rollups are not ready.
+     */
+    public static Date getCoveredTime() {
+        return coveredTime;
+    }
+
+    private static Map<String, Object> getAttributes(Position position) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (String key : KEYS) {
+            Object value = position.getAttributes().get(key);
+            if (value != null) {
+                attributes.put(key, value);
+            }
+        }
+        return attributes;
+    }
+
+    static SummaryRollup merge(SummaryRollup rollup, Position position) {
+        long time = position.getFixTime().getTime();
+        if (rollup == null) {
+            rollup = new SummaryRollup();
+            rollup.setDeviceId(position.getDeviceId());
+            rollup.setPeriodTime(new Date(time - Math.floorMod(time, PERIOD)));
+        }
+        if (rollup.getFirstTime() == null || time < rollup.getFirstTime().getTime()
+                || time == rollup.getFirstTime().getTime() && position.getId() < rollup.getFirstPositionId()) {
+            rollup.setFirstPositionId(position.getId());
+            rollup.setFirstTime(position.getFixTime());
+            rollup.setFirstAttributes(getAttributes(position));
+        }
+        if (rollup.getLastTime() == null || time > rollup.getLastTime().getTime()
+                || time == rollup.getLastTime().getTime() && position.getId() > rollup.getLastPositionId()) {
+            rollup.setLastPositionId(position.getId());
+            rollup.setLastTime(position.getFixTime());
+            rollup.setLastAttributes(getAttributes(position));
+        }
+        rollup.setMaxSpeed(Math.max(rollup.getMaxSpeed(), position.getSpeed()));
+        rollup.setMaxPositionId(Math.max(rollup.getMaxPositionId(), position.getId()));
+        return rollup;
+    }
+
+    private static Position createPosition(long deviceId, long id, Date time, Map<String, Object> attributes) {
+        Position position = new Position();
+        position.setId(id);
+        position.setDeviceId(deviceId);
+        position.setFixTime(time);
+        if (attributes != null) {
+            position.setAttributes(attributes);
+        }
+        return position;
+    }
+
+    public static Position getFirstPosition(SummaryRollup rollup) {
+        return createPosition(
+                rollup.getDeviceId(), rollup.getFirstPositionId(), rollup.getFirstTime(), rollup.getFirstAttributes());
+    }
+
+    public static Position getLastPosition(SummaryRollup rollup) {
+        return createPosition(
+                rollup.getDeviceId(), rollup.getLastPositionId(), rollup.getLastTime(), rollup.getLastAttributes());
+    }
+
+    /**
+     * Add positions stored since the last update to rollups. Large backlog is processed over several updates.
+     */
+    public static synchronized void update() throws SQLException {
+        Date time = new Date();
+        DataManager dataManager = Context.getDataManager();
+        long maxId = dataManager.getMaxPositionId();
+        if (processedId < 0) {
+            processedId = Math.max(dataManager.getSummaryCheckpoint() - BATCH_SIZE, 0);
+        }
+
+        boolean recent = false;
+        for (int i = 0; i < MAX_BATCHES && !recent && processedId < maxId; i++) {
+            long toId = Math.min(processedId + BATCH_SIZE, maxId);
+            long safeId = toId;
+            Map<Long, Map<Long, SummaryRollup>> rollups = new HashMap<>();
+            List<SummaryRollup> updated = new ArrayList<>();
+            for (Position position : dataManager.getPositions(processedId, toId)) {
+                if (!recent && position.getServerTime() != null
+                        && position.getServerTime().getTime() > time.getTime() - COMMIT_LAG) {
+                    recent = true;
+                    safeId = position.getId() - 1;
+                }
+                Map<Long, SummaryRollup> deviceRollups = rollups.get(position.getDeviceId());
+                if (deviceRollups == null) {
+                    deviceRollups = new HashMap<>();
+                    rollups.put(position.getDeviceId(), deviceRollups);
+                }
+                long fixTime = position.getFixTime().getTime();
+                long periodTime = fixTime - Math.floorMod(fixTime, PERIOD);
+                SummaryRollup rollup = deviceRollups.get(periodTime);
+                if (rollup == null) {
+                    rollup = dataManager.getSummaryRollup(position.getDeviceId(), new Date(periodTime));
+                    rollup = merge(rollup, position);
+                    deviceRollups.put(periodTime, rollup);
+                    updated.add(rollup);
+                } else {
+                    merge(rollup, position);
+                }
+            }
+            dataManager.updateSummaryRollups(updated);
+            processedId = safeId;
+        }
+
+        if (recent || processedId >= maxId) {
+            coveredTime = time;
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.Context;
+import org.traccar.config.Keys;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsCheckpoint;
+import org.traccar.reports.model.TripsConfig;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stored trips and stops. Only closed trips and stops are stored, so they never change once written. Rows are tagged
+ * with a hash of the detection configuration, and rows with a different hash are ignored and eventually removed.
+ * <p>
+ * Each device keeps a checkpoint per configuration with the last settled position time, so updates only read
+ * positions after it even when no trip or stop has been closed for a long time.
+ */
+public final class TripsStore {
+
+    private static final int VERSION = 1;
+
+    private static final Map<Long, Integer> CLEANED = new ConcurrentHashMap<>();
+
+    private TripsStore() {
+    }
+
+    public static boolean isEnabled() {
+        return Context.getConfig().getBoolean(Keys.REPORT_TRIP_STORE);
+    }
+
+    private static boolean getIgnoreOdometer(long deviceId) {
+        return Context.getDeviceManager()
+                .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
+    }
+
+    private static int getConfigHash(TripsConfig tripsConfig, boolean ignoreOdometer) {
+        return Objects.hash(
+                VERSION,
+                tripsConfig.getMinimalTripDistance(),
+                tripsConfig.getMinimalTripDuration(),
+                tripsConfig.getMinimalParkingDuration(),
+                tripsConfig.getMinimalNoDataDuration(),
+                tripsConfig.getUseIgnition(),
+                tripsConfig.getProcessInvalidPositions(),
+                tripsConfig.getSpeedThreshold(),
+                ignoreOdometer);
+    }
+
+    private static <T extends BaseReport> List<T> detect(
+            Collection<Position> positions, boolean ignoreOdometer, Class<T> reportClass, boolean includeIncomplete) {
+        return ReportUtils.detectTripsAndStops(
+                Context.getIdentityManager(), Context.getDeviceManager(), positions,
+                Context.getTripsConfig(), ignoreOdometer, reportClass, includeIncomplete);
+    }
+
+    private static Date getStoredEnd(long deviceId, int configHash, Class<? extends BaseReport> reportClass)
+            throws SQLException {
+        BaseReport range = Context.getDataManager().getStoredRange(deviceId, configHash, reportClass);
+        return range != null ? range.getEndTime() : null;
+    }
+
+    /**
+     * Detect closed trips or stops in positions from the checkpoint and add new ones to the result. Items that start
+     * at the first position may be cut off by the checkpoint and items that don't start after the stored end are
+     * already stored. Returns the new checkpoint, which is the time of the last settled position.
+     */
+    static <T extends BaseReport> Date detectClosed(
+            TripsConfig tripsConfig, Collection<Position> positions, Date checkpoint, Date storedEnd,
+            boolean ignoreOdometer, Class<T> reportClass, List<T> result) {
+        List<Position> subset = new ArrayList<>();
+        for (Position position : positions) {
+            if (!position.getFixTime().before(checkpoint)) {
+                subset.add(position);
+            }
+        }
+        if (subset.isEmpty()) {
+            return checkpoint;
+        }
+        Date first = subset.get(0).getFixTime();
+        List<T> items = new ArrayList<>();
+        int settledIndex = ReportUtils.detectClosedTripsAndStops(Context.getIdentityManager(),
+                Context.getDeviceManager(), subset, tripsConfig, ignoreOdometer, reportClass, items);
+        for (T item : items) {
+            if (item.getStartTime().after(first) && (storedEnd == null || item.getStartTime().after(storedEnd))) {
+                result.add(item);
+            }
+        }
+        return settledIndex > 0 ? subset.get(settledIndex).getFixTime() : checkpoint;
+    }
+
+    /**
+     * Detect and store trips and stops closed since the last update.
+     */
+    public static void update(long deviceId) throws SQLException {
+        boolean ignoreOdometer = getIgnoreOdometer(deviceId);
+        int configHash = getConfigHash(Context.getTripsConfig(), ignoreOdometer);
+
+        Integer cleaned = CLEANED.get(deviceId);
+        if (cleaned == null || cleaned != configHash) {
+            Context.getDataManager().removeOutdatedReports(deviceId, configHash);
+            CLEANED.put(deviceId, configHash);
+        }
+
+        TripsCheckpoint checkpoint = Context.getDataManager().getTripsCheckpoint(deviceId, configHash);
+        if (checkpoint == null) {
+            long backfill = TimeUnit.DAYS.toMillis(Context.getConfig().getLong(Keys.REPORT_TRIP_STORE_BACKFILL));
+            checkpoint = new TripsCheckpoint();
+            checkpoint.setDeviceId(deviceId);
+            checkpoint.setConfigHash(configHash);
+            checkpoint.setTripsTime(new Date(System.currentTimeMillis() - backfill));
+            checkpoint.setStopsTime(checkpoint.getTripsTime());
+        }
+        Date tripsTime = checkpoint.getTripsTime();
+        Date stopsTime = checkpoint.getStopsTime();
+        Date from = tripsTime.before(stopsTime) ? tripsTime : stopsTime;
+
+        Collection<Position> positions = Context.getDataManager().getPositions(deviceId, from, new Date());
+
+        List<TripReport> trips = new ArrayList<>();
+        checkpoint.setTripsTime(detectClosed(
+                Context.getTripsConfig(), positions, tripsTime, getStoredEnd(deviceId, configHash, TripReport.class),
+                ignoreOdometer, TripReport.class, trips));
+        List<StopReport> stops = new ArrayList<>();
+        checkpoint.setStopsTime(detectClosed(
+                Context.getTripsConfig(), positions, stopsTime, getStoredEnd(deviceId, configHash, StopReport.class),
+                ignoreOdometer, StopReport.class, stops));
+
+        Context.getDataManager().addReports(configHash, trips);
+        Context.getDataManager().addReports(configHash, stops);
+        if (checkpoint.getId() == 0
+                || !tripsTime.equals(checkpoint.getTripsTime()) || !stopsTime.equals(checkpoint.getStopsTime())) {
+            Context.getDataManager().updateTripsCheckpoint(checkpoint);
+        }
+    }
+
+    private static <T extends BaseReport> Collection<T> getObjects(
+            long deviceId, Date from, Date to, Class<T> reportClass) throws SQLException {
+        boolean ignoreOdometer = getIgnoreOdometer(deviceId);
+        int configHash = getConfigHash(Context.getTripsConfig(), ignoreOdometer);
+
+        BaseReport range = Context.getDataManager().getStoredRange(deviceId, configHash, reportClass);
+        if (range == null || range.getStartTime() == null || from.before(range.getStartTime())) {
+            return detect(Context.getDataManager().getPositions(deviceId, from, to), ignoreOdometer, reportClass, true);
+        }
+
+        List<T> result = new ArrayList<>();
+        if (from.before(range.getEndTime())) {
+            Date storedTo = to.before(range.getEndTime()) ? to : range.getEndTime();
+            Collection<? extends BaseReport> stored = reportClass.equals(TripReport.class)
+                    ? Context.getDataManager().getTrips(deviceId, configHash, from, storedTo)
+                    : Context.getDataManager().getStops(deviceId, configHash, from, storedTo);
+            Device device = Context.getIdentityManager().getById(deviceId);
+            for (BaseReport item : stored) {
+                item.setDeviceName(device.getName());
+                if (item instanceof TripReport) {
+                    TripReport trip = (TripReport) item;
+                    trip.setDriverName(ReportUtils.findDriverName(trip.getDriverUniqueId()));
+                }
+                result.add(reportClass.cast(item));
+            }
+        }
+
+        if (to.after(range.getEndTime())) {
+            Date tailFrom = from.after(range.getEndTime()) ? from : range.getEndTime();
+            for (T item : detect(
+                    Context.getDataManager().getPositions(deviceId, tailFrom, to), ignoreOdometer, reportClass, true)) {
+                if (result.isEmpty() || item.getStartTime().after(range.getEndTime())) {
+                    result.add(item);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public static Collection<TripReport> getTrips(long deviceId, Date from, Date to) throws SQLException {
+        return getObjects(deviceId, from, to, TripReport.class);
+    }
+
+    public static Collection<StopReport> getStops(long deviceId, Date from, Date to) throws SQLException {
+        return getObjects(deviceId, from, to, StopReport.class);
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports.model;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Aggregated positions of one device for one period. Keeps first and last position values required for the summary
+ * report and the maximum speed.
+ */
+public class SummaryRollup {
+
+    private long id;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    private long deviceId;
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(long deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    private Date periodTime;
+
+    public Date getPeriodTime() {
+        return periodTime;
+    }
+
+    public void setPeriodTime(Date periodTime) {
+        this.periodTime = periodTime;
+    }
+
+    private long firstPositionId;
+
+    public long getFirstPositionId() {
+        return firstPositionId;
+    }
+
+    public void setFirstPositionId(long firstPositionId) {
+        this.firstPositionId = firstPositionId;
+    }
+
+    private Date firstTime;
+
+    public Date getFirstTime() {
+        return firstTime;
+    }
+
+    public void setFirstTime(Date firstTime) {
+        this.firstTime = firstTime;
+    }
+
+    private Map<String, Object> firstAttributes;
+
+    public Map<String, Object> getFirstAttributes() {
+        return firstAttributes;
+    }
+
+    public void setFirstAttributes(Map<String, Object> firstAttributes) {
+        this.firstAttributes = firstAttributes;
+    }
+
+    private long lastPositionId;
+
+    public long getLastPositionId() {
+        return lastPositionId;
+    }
+
+    public void setLastPositionId(long lastPositionId) {
+        this.lastPositionId = lastPositionId;
+    }
+
+    private Date lastTime;
+
+    public Date getLastTime() {
+        return lastTime;
+    }
+
+    public void setLastTime(Date lastTime) {
+        this.lastTime = lastTime;
+    }
+
+    private Map<String, Object> lastAttributes;
+
+    public Map<String, Object> getLastAttributes() {
+        return lastAttributes;
+    }
+
+    public void setLastAttributes(Map<String, Object> lastAttributes) {
+        this.lastAttributes = lastAttributes;
+    }
+
+    private double maxSpeed;
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(double maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    private long maxPositionId;
+
+    public long getMaxPositionId() {
+        return maxPositionId;
+    }
+
+    public void setMaxPositionId(long maxPositionId) {
+        this.maxPositionId = maxPositionId;
+    }
+
+}
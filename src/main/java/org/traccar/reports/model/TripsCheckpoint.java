@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports.model;
+
+import java.util.Date;
+
+/**
+ * Times up to which positions of one device are processed for stored trips and stops with one configuration.
+ */
+public class TripsCheckpoint {
+
+    private long id;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    private long deviceId;
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(long deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    private int configHash;
+
+    public int getConfigHash() {
+        return configHash;
+    }
+
+    public void setConfigHash(int configHash) {
+        this.configHash = configHash;
+    }
+
+    private Date tripsTime;
+
+    public Date getTripsTime() {
+        return tripsTime;
+    }
+
+    public void setTripsTime(Date tripsTime) {
+        this.tripsTime = tripsTime;
+    }
+
+    private Date stopsTime;
+
+    public Date getStopsTime() {
+        return stopsTime;
+    }
+
+    public void setStopsTime(Date stopsTime) {
+        this.stopsTime = stopsTime;
+    }
+
+}
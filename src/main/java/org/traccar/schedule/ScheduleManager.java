@@ -21,6 +21,7 @@ import java.util.concurrent.ScheduledExecutorService;
 public class ScheduleManager {
 
     private ScheduledExecutorService executor;
+    private ScheduledExecutorService backgroundExecutor;
 
     public void start() {
 
@@ -28,6 +29,14 @@ public class ScheduleManager {
 
         new TaskDeviceInactivityCheck().schedule(executor);
         new TaskWebSocketKeepalive().schedule(executor);
+        new TaskDeviceStatusCheck().schedule(executor);
+        new TaskDeviceUpdate().schedule(executor);
+
+        // long running report jobs must not delay status checks and updates
+        backgroundExecutor = Executors.newScheduledThreadPool(2);
+
+        new TaskTripsUpdate().schedule(backgroundExecutor);
+        new TaskSummaryUpdate().schedule(backgroundExecutor);
 
     }
 
@@ -37,6 +46,10 @@ public class ScheduleManager {
             executor.shutdown();
             executor = null;
         }
+        if (backgroundExecutor != null) {
+            backgroundExecutor.shutdown();
+            backgroundExecutor = null;
+        }
 
     }
 
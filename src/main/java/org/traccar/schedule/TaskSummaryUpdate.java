@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.reports.SummaryStore;
+
+import java.sql.SQLException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TaskSummaryUpdate implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskSummaryUpdate.class);
+
+    private static final long CHECK_PERIOD_MINUTES = 5;
+
+    public void schedule(ScheduledExecutorService executor) {
+        if (SummaryStore.isEnabled()) {
+            executor.scheduleWithFixedDelay(this, CHECK_PERIOD_MINUTES, CHECK_PERIOD_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            SummaryStore.update();
+        } catch (SQLException e) {
+            LOGGER.warn("Summary update error", e);
+        }
+    }
+
+}
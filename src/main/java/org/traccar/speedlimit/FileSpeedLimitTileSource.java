@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.speedlimit;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offline source that reads ways from a file in Overpass JSON format (output of a "way[maxspeed]" query with
+ * "out geom"). The whole file is loaded in memory.
+ */
+public class FileSpeedLimitTileSource implements SpeedLimitTileSource {
+
+    private final List<Way> ways;
+
+    public FileSpeedLimitTileSource(String file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(Paths.get(file));
+             JsonReader reader = Json.createReader(inputStream)) {
+            ways = OverpassSpeedLimitProvider.parseWays(reader.readObject());
+        }
+    }
+
+    @Override
+    public void getWays(double south, double west, double north, double east, WaysCallback callback) {
+        List<Way> result = new ArrayList<>();
+        for (Way way : ways) {
+            if (way.intersects(south, west, north, east)) {
+                result.add(way);
+            }
+        }
+        callback.onSuccess(result);
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ * Copyright 2020 - 2021 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,16 +22,23 @@ import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.InvocationCallback;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
-public class OverpassSpeedLimitProvider implements SpeedLimitProvider {
+public class OverpassSpeedLimitProvider implements SpeedLimitProvider, SpeedLimitTileSource {
 
     private final String url;
 
     public OverpassSpeedLimitProvider(String url) {
-        this.url = url + "?data=[out:json];way[maxspeed](around:100.0,%f,%f);out%%20tags;";
+        this.url = url + "?data=[out:json];way[maxspeed]";
     }
 
-    private Double parseSpeed(String value) {
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+
+    private static Double parseSpeed(String value) {
         if (value.endsWith(" mph")) {
             return UnitsConverter.knotsFromMph(Double.parseDouble(value.substring(0, value.length() - 4)));
         } else if (value.endsWith(" knots")) {
@@ -45,7 +52,7 @@ public class OverpassSpeedLimitProvider implements SpeedLimitProvider {
 
     @Override
     public void getSpeedLimit(double latitude, double longitude, SpeedLimitProviderCallback callback) {
-        String formattedUrl = String.format(url, latitude, longitude);
+        String formattedUrl = url + "(around:100.0," + format(latitude) + "," + format(longitude) + ");out%20tags;";
         AsyncInvoker invoker = Context.getClient().target(formattedUrl).request().async();
         invoker.get(new InvocationCallback<JsonObject>() {
             @Override
@@ -71,4 +78,53 @@ public class OverpassSpeedLimitProvider implements SpeedLimitProvider {
         });
     }
 
+    public static List<Way> parseWays(JsonObject json) {
+        List<Way> ways = new ArrayList<>();
+        JsonArray elements = json.getJsonArray("elements");
+        for (int i = 0; i < elements.size(); i++) {
+            JsonObject element = elements.getJsonObject(i);
+            JsonObject tags = element.getJsonObject("tags");
+            JsonArray geometry = element.getJsonArray("geometry");
+            if (tags == null || geometry == null || geometry.isEmpty() || !tags.containsKey("maxspeed")) {
+                continue;
+            }
+            Double maxSpeed = parseSpeed(tags.getString("maxspeed"));
+            if (maxSpeed != null) {
+                double[] points = new double[geometry.size() * 2];
+                for (int j = 0; j < geometry.size(); j++) {
+                    JsonObject point = geometry.getJsonObject(j);
+                    points[j * 2] = point.getJsonNumber("lat").doubleValue();
+                    points[j * 2 + 1] = point.getJsonNumber("lon").doubleValue();
+                }
+                ways.add(new Way(maxSpeed, points));
+            }
+        }
+        return ways;
+    }
+
+    @Override
+    public void getWays(double south, double west, double north, double east, WaysCallback callback) {
+        String formattedUrl = url + "("
+                + format(south) + "," + format(west) + "," + format(north) + "," + format(east) + ");out%20geom;";
+        AsyncInvoker invoker = Context.getClient().target(formattedUrl).request().async();
+        invoker.get(new InvocationCallback<JsonObject>() {
+            @Override
+            public void completed(JsonObject json) {
+                List<Way> ways;
+                try {
+                    ways = parseWays(json);
+                } catch (RuntimeException e) {
+                    callback.onFailure(e);
+                    return;
+                }
+                callback.onSuccess(ways);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                callback.onFailure(throwable);
+            }
+        });
+    }
+
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.speedlimit;
+
+import java.util.List;
+
+/**
+ * Source of road geometry with speed limits for a bounding box. Used to fill tile cache.
+ */
+public interface SpeedLimitTileSource {
+
+    interface WaysCallback {
+
+        void onSuccess(List<Way> ways);
+
+        void onFailure(Throwable e);
+
+    }
+
+    void getWays(double south, double west, double north, double east, WaysCallback callback);
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.speedlimit;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.traccar.Main;
+import org.traccar.database.StatisticsManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Speed limit provider that loads all ways of a grid tile with a single request and answers lookups inside the tile
+ * from memory. Optional file tier keeps tiles between restarts. Concurrent misses for the same tile share one request.
+ */
+public class TileSpeedLimitProvider implements SpeedLimitProvider {
+
+    private static final double SEARCH_RADIUS = 100;
+    private static final double METERS_PER_DEGREE = 111000;
+
+    private static final class Tile {
+        private final List<Way> ways;
+        private final long time;
+
+        private Tile(List<Way> ways, long time) {
+            this.ways = ways;
+            this.time = time;
+        }
+    }
+
+    private final SpeedLimitTileSource source;
+    private final double tileSize;
+    private final long timeout;
+    private final Map<Long, Tile> tiles;
+    private final Map<Long, CompletableFuture<List<Way>>> pending = new ConcurrentHashMap<>();
+
+    private final MVStore store;
+    private final MVMap<Long, String> storeMap;
+
+    /**
+     * @param source source of ways for tiles missing in cache
+     * @param size maximum number of tiles kept in memory
+     * @param tileSize tile size in degrees
+     * @param timeout expiration time in milliseconds, 0 to never expire
+     * @param file optional persistent cache file
+     */
+    public TileSpeedLimitProvider(SpeedLimitTileSource source, int size, double tileSize, long timeout, String file) {
+        this.source = source;
+        this.tileSize = tileSize;
+        this.timeout = timeout;
+        tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+                return size() > size;
+            }
+        };
+        if (file != null) {
+            store = new MVStore.Builder().fileName(file).compress().open();
+            storeMap = store.openMap("tiles");
+        } else {
+            store = null;
+            storeMap = null;
+        }
+    }
+
+    private static void registerMetric(String key) {
+        if (Main.getInjector() != null) {
+            Main.getInjector().getInstance(StatisticsManager.class).registerMetric("speedLimit.cache." + key, 1);
+        }
+    }
+
+    private long getKey(double latitude, double longitude) {
+        long latIndex = (long) Math.floor((latitude + 90) / tileSize);
+        long lonIndex = (long) Math.floor((longitude + 180) / tileSize);
+        return (latIndex << 32) | lonIndex;
+    }
+
+    private boolean isExpired(long time) {
+        return timeout > 0 && System.currentTimeMillis() - time > timeout;
+    }
+
+    private List<Way> getTile(long key) {
+        Tile tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+            if (tile != null && isExpired(tile.time)) {
+                tiles.remove(key);
+                tile = null;
+            }
+        }
+        if (tile == null && storeMap != null) {
+            String value = storeMap.get(key);
+            if (value != null) {
+                int separator = value.indexOf('|');
+                long time = Long.parseLong(value.substring(0, separator));
+                if (isExpired(time)) {
+                    storeMap.remove(key);
+                } else {
+                    tile = new Tile(Way.decodeList(value.substring(separator + 1)), time);
+                    synchronized (tiles) {
+                        tiles.put(key, tile);
+                    }
+                }
+            }
+        }
+        registerMetric(tile != null ? "hits" : "misses");
+        return tile != null ? tile.ways : null;
+    }
+
+    private void putTile(long key, List<Way> ways) {
+        long time = System.currentTimeMillis();
+        synchronized (tiles) {
+            tiles.put(key, new Tile(ways, time));
+        }
+        if (storeMap != null) {
+            storeMap.put(key, time + "|" + Way.encode(ways));
+        }
+    }
+
+    private static void findSpeedLimit(
+            List<Way> ways, double latitude, double longitude, SpeedLimitProviderCallback callback) {
+        Way nearest = null;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (Way way : ways) {
+            double distance = way.distance(latitude, longitude, SEARCH_RADIUS);
+            if (distance < nearestDistance) {
+                nearest = way;
+                nearestDistance = distance;
+            }
+        }
+        if (nearest != null) {
+            callback.onSuccess(nearest.getSpeedLimit());
+        } else {
+            callback.onFailure(new SpeedLimitException("Not found"));
+        }
+    }
+
+    @Override
+    public void getSpeedLimit(double latitude, double longitude, SpeedLimitProviderCallback callback) {
+        long key = getKey(latitude, longitude);
+
+        List<Way> ways = getTile(key);
+        if (ways != null) {
+            findSpeedLimit(ways, latitude, longitude, callback);
+            return;
+        }
+
+        CompletableFuture<List<Way>> future = new CompletableFuture<>();
+        CompletableFuture<List<Way>> existing = pending.putIfAbsent(key, future);
+        (existing != null ? existing : future).whenComplete((result, error) -> {
+            if (error != null) {
+                callback.onFailure(error);
+            } else {
+                findSpeedLimit(result, latitude, longitude, callback);
+            }
+        });
+        if (existing != null) {
+            registerMetric("deduplicated");
+            return;
+        }
+
+        double south = Math.floor((latitude + 90) / tileSize) * tileSize - 90;
+        double west = Math.floor((longitude + 180) / tileSize) * tileSize - 180;
+        double latitudeMargin = SEARCH_RADIUS / METERS_PER_DEGREE;
+        double longitudeMargin = latitudeMargin / Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+        try {
+            source.getWays(
+                    south - latitudeMargin, west - longitudeMargin,
+                    south + tileSize + latitudeMargin, west + tileSize + longitudeMargin,
+                    new SpeedLimitTileSource.WaysCallback() {
+                @Override
+                public void onSuccess(List<Way> result) {
+                    putTile(key, result);
+                    pending.remove(key, future);
+                    future.complete(result);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    pending.remove(key, future);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+}
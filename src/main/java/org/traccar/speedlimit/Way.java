@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.speedlimit;
+
+import org.traccar.helper.DistanceCalculator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Road with a known speed limit, stored as a polyline of latitude and longitude pairs.
+ */
+public final class Way {
+
+    private static final double METERS_PER_DEGREE = 111000;
+
+    private final double speedLimit;
+    private final double[] points;
+
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    /**
+     * @param speedLimit speed limit in knots
+     * @param points latitude and longitude pairs
+     */
+    public Way(double speedLimit, double[] points) {
+        if (points.length < 2 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid way geometry");
+        }
+        this.speedLimit = speedLimit;
+        this.points = points;
+        double minLat = Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < points.length; i += 2) {
+            minLat = Math.min(minLat, points[i]);
+            maxLat = Math.max(maxLat, points[i]);
+            minLon = Math.min(minLon, points[i + 1]);
+            maxLon = Math.max(maxLon, points[i + 1]);
+        }
+        minLatitude = minLat;
+        minLongitude = minLon;
+        maxLatitude = maxLat;
+        maxLongitude = maxLon;
+    }
+
+    public double getSpeedLimit() {
+        return speedLimit;
+    }
+
+    public boolean intersects(double south, double west, double north, double east) {
+        return minLatitude <= north && maxLatitude >= south && minLongitude <= east && maxLongitude >= west;
+    }
+
+    /**
+     * Distance from the point to the way in meters, or infinity if the point is farther than the limit.
+     */
+    public double distance(double latitude, double longitude, double limit) {
+        double latitudeMargin = limit / METERS_PER_DEGREE;
+        double longitudeMargin = latitudeMargin / Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+        if (!intersects(
+                latitude - latitudeMargin, longitude - longitudeMargin,
+                latitude + latitudeMargin, longitude + longitudeMargin)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double result = DistanceCalculator.distance(latitude, longitude, points[0], points[1]);
+        for (int i = 2; i < points.length; i += 2) {
+            double lat1 = points[i - 2];
+            double lon1 = points[i - 1];
+            double lat2 = points[i];
+            double lon2 = points[i + 1];
+            if (lat1 != lat2 || lon1 != lon2) {
+                result = Math.min(result, DistanceCalculator.distanceToLine(
+                        latitude, longitude, lat1, lon1, lat2, lon2));
+            }
+        }
+        return result <= limit ? result : Double.POSITIVE_INFINITY;
+    }
+
+    public String encode() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(speedLimit);
+        for (double point : points) {
+            builder.append(',').append(point);
+        }
+        return builder.toString();
+    }
+
+    public static Way decode(String value) {
+        String[] values = value.split(",");
+        double[] points = new double[values.length - 1];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = Double.parseDouble(values[i + 1]);
+        }
+        return new Way(Double.parseDouble(values[0]), points);
+    }
+
+    public static String encode(List<Way> ways) {
+        StringBuilder builder = new StringBuilder();
+        for (Way way : ways) {
+            if (builder.length() > 0) {
+                builder.append(';');
+            }
+            builder.append(way.encode());
+        }
+        return builder.toString();
+    }
+
+    public static List<Way> decodeList(String value) {
+        List<Way> ways = new ArrayList<>();
+        if (!value.isEmpty()) {
+            for (String item : value.split(";")) {
+                ways.add(decode(item));
+            }
+        }
+        return ways;
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.traccar.api;
+
+import org.junit.Test;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoginCacheTest {
+
+    @Test
+    public void testCache() {
+
+        LoginCache loginCache = new LoginCache(new Config());
+
+        assertEquals(0, loginCache.getUserId("Basic dXNlcjpwYXNzd29yZA=="));
+
+        loginCache.put("Basic dXNlcjpwYXNzd29yZA==", 1);
+        loginCache.put("Basic b3RoZXI6cGFzc3dvcmQ=", 2);
+        assertEquals(1, loginCache.getUserId("Basic dXNlcjpwYXNzd29yZA=="));
+        assertEquals(0, loginCache.getUserId("Basic dXNlcjpvdGhlcg=="));
+
+        loginCache.invalidate(1);
+        assertEquals(0, loginCache.getUserId("Basic dXNlcjpwYXNzd29yZA=="));
+        assertEquals(2, loginCache.getUserId("Basic b3RoZXI6cGFzc3dvcmQ="));
+
+    }
+
+    @Test
+    public void testDisabled() {
+
+        Config config = new Config();
+        config.setString(Keys.WEB_AUTH_CACHE_SIZE, "0");
+        LoginCache loginCache = new LoginCache(config);
+
+        loginCache.put("Basic dXNlcjpwYXNzd29yZA==", 1);
+        assertEquals(0, loginCache.getUserId("Basic dXNlcjpwYXNzd29yZA=="));
+
+    }
+
+}
@@ -5,13 +5,23 @@ import java.sql.SQLException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.traccar.model.Calendar;
 
 import net.fortuna.ical4j.data.ParserException;
+import net.fortuna.ical4j.filter.Filter;
+import net.fortuna.ical4j.filter.PeriodRule;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
+import net.fortuna.ical4j.model.component.CalendarComponent;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class CalendarTest {
@@ -56,4 +66,94 @@ public class CalendarTest {
         date = format.parse("2016-12-13 07:00:01+05");
         assertTrue(!calendar.checkMoment(date));
     }
+
+    private static final String OCCURRENCES_CALENDAR = "BEGIN:VCALENDAR\n" +
+            "PRODID:-//Mozilla.org/NONSGML Mozilla Calendar V1.1//EN\n" +
+            "VERSION:2.0\n" +
+            "BEGIN:VEVENT\n" +
+            "UID:1\n" +
+            "RRULE:FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR\n" +
+            "EXDATE:20210107T080000Z\n" +
+            "DTSTART:20210104T080000Z\n" +
+            "DTEND:20210104T170000Z\n" +
+            "END:VEVENT\n" +
+            "BEGIN:VEVENT\n" +
+            "UID:2\n" +
+            "RRULE:FREQ=DAILY;INTERVAL=3\n" +
+            "DTSTART:20210101T160000Z\n" +
+            "DTEND:20210101T200000Z\n" +
+            "END:VEVENT\n" +
+            "END:VCALENDAR";
+
+    private void verifyMoment(Calendar calendar, Date date) {
+        Period period = new Period(new DateTime(date), Duration.ZERO);
+        Filter<CalendarComponent> filter = new Filter<>(new PeriodRule<>(period));
+        boolean expected = !filter.filter(calendar.getCalendar().getComponents(CalendarComponent.VEVENT)).isEmpty();
+        assertEquals(date.toString(), expected, calendar.checkMoment(date));
+    }
+
+    @Test
+    public void testOccurrences() throws IOException, ParserException, ParseException {
+        Calendar calendar = new Calendar();
+        calendar.setData(OCCURRENCES_CALENDAR.getBytes());
+
+        Random random = new Random(1);
+        long start = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssX").parse("2021-01-01 00:00:00Z").getTime();
+        for (int i = 0; i < 500; i++) {
+            verifyMoment(calendar, new Date(start + (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(90))));
+        }
+    }
+
+    @Test
+    public void testOccurrencesSequential() throws IOException, ParserException, ParseException {
+        Calendar calendar = new Calendar();
+        calendar.setData(OCCURRENCES_CALENDAR.getBytes());
+
+        long start = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssX").parse("2021-06-01 00:00:00Z").getTime();
+        long step = TimeUnit.HOURS.toMillis(17);
+        for (long time = start; time > start - TimeUnit.DAYS.toMillis(100); time -= step) {
+            verifyMoment(calendar, new Date(time));
+        }
+        for (long time = start; time < start + TimeUnit.DAYS.toMillis(500); time += step) {
+            verifyMoment(calendar, new Date(time));
+        }
+    }
+
+    @Test
+    public void testOccurrenceBoundaries() throws IOException, ParserException {
+        String calendarString = "BEGIN:VCALENDAR\n" +
+                "PRODID:-//Mozilla.org/NONSGML Mozilla Calendar V1.1//EN\n" +
+                "VERSION:2.0\n" +
+                "BEGIN:VEVENT\n" +
+                "UID:1\n" +
+                "DTSTART:20210301T000000Z\n" +
+                "DTEND:20210401T000000Z\n" +
+                "END:VEVENT\n" +
+                "BEGIN:VEVENT\n" +
+                "UID:2\n" +
+                "RRULE:FREQ=DAILY\n" +
+                "DTSTART:20210104T080000Z\n" +
+                "DTEND:20210104T170000Z\n" +
+                "END:VEVENT\n" +
+                "END:VCALENDAR";
+        Calendar calendar = new Calendar();
+        calendar.setData(calendarString.getBytes());
+
+        long[] instants = {
+                Instant.parse("2021-03-01T00:00:00Z").toEpochMilli(),
+                Instant.parse("2021-04-01T00:00:00Z").toEpochMilli(),
+                Instant.parse("2021-01-04T08:00:00Z").toEpochMilli(),
+                Instant.parse("2021-01-04T17:00:00Z").toEpochMilli(),
+                Instant.parse("2021-01-20T08:00:00Z").toEpochMilli(),
+                Instant.parse("2021-01-20T17:00:00Z").toEpochMilli()};
+        for (long instant : instants) {
+            for (long offset : new long[] {-1000, -1, 0, 1, 999, 1000}) {
+                verifyMoment(calendar, new Date(instant + offset));
+            }
+        }
+
+        assertTrue(!calendar.checkMoment(new Date(Instant.parse("2021-04-01T00:00:00Z").toEpochMilli())));
+        assertTrue(calendar.checkMoment(new Date(Instant.parse("2021-01-20T17:00:00.001Z").toEpochMilli())));
+    }
+
 }
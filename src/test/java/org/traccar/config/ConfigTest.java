@@ -2,6 +2,8 @@ package org.traccar.config;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.traccar.config.Config;
 
 public class ConfigTest {
@@ -16,4 +18,13 @@ public class ConfigTest {
         assertEquals("STATUS_TIMEOUT", Config.getEnvironmentVariableName("status.timeout"));
     }
 
+    @Test
+    public void testBooleanDefault() {
+        Config config = new Config();
+        assertTrue(config.getBoolean(Keys.WEB_SOCKET_COMPRESSION));
+        assertFalse(config.getBoolean(Keys.WEB_DEBUG));
+        config.setString(Keys.WEB_SOCKET_COMPRESSION, "false");
+        assertFalse(config.getBoolean(Keys.WEB_SOCKET_COMPRESSION));
+    }
+
 }
@@ -0,0 +1,34 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.model.Event;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchWriterTest {
+
+    @Test
+    public void testWriteAfterStop() throws Exception {
+
+        BatchWriter<Event> writer = new BatchWriter<>(null, null, "test", 10, 10, 2, 10);
+        writer.stop();
+
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            writer.write(i, new Event(), success -> {
+                completed.incrementAndGet();
+                if (!success) {
+                    failed.incrementAndGet();
+                }
+            });
+        }
+
+        assertEquals(3, completed.get());
+        assertEquals(3, failed.get());
+
+    }
+
+}
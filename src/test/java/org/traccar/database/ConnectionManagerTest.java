@@ -0,0 +1,78 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.BaseTest;
+import org.traccar.model.Device;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionManagerTest extends BaseTest {
+
+    private static class TestListener implements ConnectionManager.UpdateListener {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch keepalive = new CountDownLatch(1);
+
+        @Override
+        public void onKeepalive() {
+            keepalive.countDown();
+        }
+
+        @Override
+        public void onUpdateDevice(Device device) {
+        }
+
+        @Override
+        public void onUpdatePosition(Position position) {
+        }
+
+        @Override
+        public void onUpdateEvent(Event event) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        }
+
+    }
+
+    @Test
+    public void testSlowListener() throws Exception {
+
+        ConnectionManager connectionManager = new ConnectionManager();
+        TestListener listener = new TestListener();
+        connectionManager.addListener(1, listener);
+
+        connectionManager.updateEvent(1, new Event("first", 1));
+        assertTrue(listener.started.await(1, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 2000; i++) {
+            connectionManager.updateEvent(1, new Event(String.valueOf(i), 1));
+        }
+        connectionManager.sendKeepalive();
+
+        listener.release.countDown();
+        assertTrue(listener.keepalive.await(1, TimeUnit.SECONDS));
+
+        assertEquals(1001, listener.events.size());
+        assertEquals("first", listener.events.get(0).getType());
+        assertEquals("1000", listener.events.get(1).getType());
+        assertEquals("1999", listener.events.get(1000).getType());
+
+    }
+
+}
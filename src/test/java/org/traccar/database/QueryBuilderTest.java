@@ -0,0 +1,89 @@
+package org.traccar.database;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.traccar.BaseTest;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryBuilderTest extends BaseTest {
+
+    private static final String INSERT = "INSERT INTO positions (deviceId, protocol, fixTime, valid, latitude, attributes) "
+            + "VALUES (:deviceId, :protocol, :fixTime, :valid, :latitude, :attributes)";
+
+    private JdbcDataSource dataSource;
+
+    @Before
+    public void before() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        QueryBuilder.create(dataSource, "CREATE TABLE positions ("
+                + "id INT AUTO_INCREMENT PRIMARY KEY, deviceId INT, protocol VARCHAR(128), fixTime TIMESTAMP, "
+                + "valid BOOLEAN, latitude DOUBLE, attributes VARCHAR(4000))").executeUpdate();
+    }
+
+    private Position createPosition(long deviceId, double latitude) {
+        Position position = new Position("test");
+        position.setDeviceId(deviceId);
+        position.setFixTime(new Date(1000000L * deviceId));
+        position.setValid(true);
+        position.setLatitude(latitude);
+        position.set(Position.KEY_INDEX, (int) deviceId);
+        return position;
+    }
+
+    @Test
+    public void testObjectMapping() throws SQLException {
+
+        Position position = createPosition(1, 10.5);
+        position.setId(QueryBuilder.create(dataSource, INSERT, true).setObject(position).executeUpdate());
+        assertNotEquals(0, position.getId());
+
+        Position result = QueryBuilder.create(dataSource, "SELECT * FROM positions WHERE id = :id")
+                .setLong("id", position.getId())
+                .executeQuerySingle(Position.class);
+
+        assertEquals(position.getId(), result.getId());
+        assertEquals(1, result.getDeviceId());
+        assertEquals("test", result.getProtocol());
+        assertEquals(position.getFixTime(), result.getFixTime());
+        assertTrue(result.getValid());
+        assertEquals(10.5, result.getLatitude(), 0.00001);
+        assertEquals(1, result.getInteger(Position.KEY_INDEX));
+
+    }
+
+    @Test
+    public void testBatch() throws SQLException {
+
+        List<Position> positions = Arrays.asList(createPosition(1, 1), createPosition(2, 2), createPosition(3, 3));
+        QueryBuilder builder = QueryBuilder.create(dataSource, INSERT, true);
+        for (Position position : positions) {
+            builder.setObject(position).addBatch();
+        }
+        long[] ids = builder.executeBatch();
+
+        assertEquals(3, ids.length);
+        Collection<Position> result = QueryBuilder.create(dataSource, "SELECT * FROM positions ORDER BY id")
+                .executeQuery(Position.class);
+        assertEquals(3, result.size());
+        int index = 0;
+        for (Position position : result) {
+            assertEquals(ids[index], position.getId());
+            assertEquals(positions.get(index).getDeviceId(), position.getDeviceId());
+            index += 1;
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.model.User;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UsersManagerTest {
+
+    @Test
+    public void testLoginChanged() {
+
+        User cachedUser = new User();
+        cachedUser.setId(1);
+
+        User user = new User();
+        user.setId(1);
+        assertFalse(UsersManager.isLoginChanged(cachedUser, user));
+
+        user.setExpirationTime(new Date());
+        assertTrue(UsersManager.isLoginChanged(cachedUser, user));
+
+        user = new User();
+        user.setId(1);
+        user.setDisabled(true);
+        assertTrue(UsersManager.isLoginChanged(cachedUser, user));
+
+    }
+
+    @Test
+    public void testPasswordReset() {
+
+        User cachedUser = new User();
+        cachedUser.setId(1);
+        cachedUser.setPassword("old");
+
+        cachedUser.setPassword("new");
+        assertTrue(UsersManager.isLoginChanged(cachedUser, cachedUser));
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.traccar.geocoder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GeocoderCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testQuantization() {
+        GeocoderCache cache = new GeocoderCache(100, 4, 0, null);
+        assertEquals(cache.getKey(51.50001, -0.12001), cache.getKey(51.50004, -0.12004));
+        assertNotEquals(cache.getKey(51.50001, -0.12001), cache.getKey(51.50011, -0.12001));
+        assertNotEquals(cache.getKey(-51.50001, 0.12001), cache.getKey(51.50001, -0.12001));
+
+        cache.put(cache.getKey(51.50001, -0.12001), "London");
+        assertEquals("London", cache.get(cache.getKey(51.50004, -0.12004)));
+    }
+
+    @Test
+    public void testEviction() throws InterruptedException {
+        GeocoderCache cache = new GeocoderCache(16, 4, 0, null);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, String.valueOf(i));
+        }
+        assertNull(cache.get(0));
+        assertEquals("999", cache.get(999));
+
+        GeocoderCache expiringCache = new GeocoderCache(16, 4, 1, null);
+        expiringCache.put(1, "address");
+        Thread.sleep(10);
+        assertNull(expiringCache.get(1));
+    }
+
+    @Test
+    public void testPending() {
+        GeocoderCache cache = new GeocoderCache(16, 4, 0, null);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        assertNull(cache.addPending(1, first));
+        assertSame(first, cache.addPending(1, new CompletableFuture<>()));
+        cache.completePending(1, first, "address", null);
+        assertEquals("address", first.join());
+        assertNull(cache.addPending(1, new CompletableFuture<>()));
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        String file = new File(folder.getRoot(), "geocoder.db").getPath();
+
+        GeocoderCache cache = new GeocoderCache(16, 4, 0, file);
+        cache.put(1, "address");
+        cache.close();
+
+        cache = new GeocoderCache(16, 4, 0, file);
+        assertEquals("address", cache.get(1));
+        cache.close();
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.traccar.geofence;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceIndexTest {
+
+    @Test
+    public void testCandidates() throws ParseException {
+        GeofenceIndex index = new GeofenceIndex();
+        index.put(1, new GeofenceCircle("CIRCLE (55.75414 37.6204, 100)"));
+        index.put(2, new GeofencePolygon("POLYGON ((-10 170, 10 170, 10 -170, -10 -170))"));
+        index.put(3, new GeofencePolyline("LINESTRING (56.836 60.6126, 56.8393 60.6114)", 15));
+
+        assertEquals(1, index.getCandidates(55.75477, 37.62025).size());
+        assertTrue(index.getCandidates(55.76545, 37.61921).isEmpty());
+        assertTrue(index.getCandidates(0, 179.5).contains(2L));
+        assertTrue(index.getCandidates(56.8375, 60.6120).contains(3L));
+
+        index.remove(1);
+        assertTrue(index.getCandidates(55.75477, 37.62025).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testLinearScanEquality() throws ParseException {
+        Random random = new Random(1);
+        List<GeofenceGeometry> geometries = new ArrayList<>();
+        GeofenceIndex index = new GeofenceIndex();
+        for (int i = 0; i < 300; i++) {
+            double lat = random.nextDouble() * 10 + 50;
+            double lon = random.nextDouble() * 10 + 30;
+            GeofenceGeometry geometry;
+            switch (i % 3) {
+                case 0:
+                    geometry = new GeofenceCircle(lat, lon, random.nextDouble() * 50000);
+                    break;
+                case 1:
+                    double size = random.nextDouble();
+                    geometry = new GeofencePolygon(String.format(Locale.US, "POLYGON ((%f %f, %f %f, %f %f))",
+                            lat, lon, lat + size, lon, lat, lon + size));
+                    break;
+                default:
+                    geometry = new GeofencePolyline(String.format(Locale.US, "LINESTRING (%f %f, %f %f)",
+                            lat, lon, lat + random.nextDouble(), lon + random.nextDouble()), 1000);
+                    break;
+            }
+            geometries.add(geometry);
+            index.put(i, geometry);
+        }
+        for (int i = 0; i < 10000; i++) {
+            double lat = random.nextDouble() * 12 + 49;
+            double lon = random.nextDouble() * 12 + 29;
+            List<Long> candidates = index.getCandidates(lat, lon);
+            for (int j = 0; j < geometries.size(); j++) {
+                if (geometries.get(j).containsPoint(lat, lon)) {
+                    assertTrue(candidates.contains((long) j));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.traccar.handler;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.model.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BaseEnrichmentHandlerTest {
+
+    @ChannelHandler.Sharable
+    private static class TestHandler extends BaseEnrichmentHandler {
+
+        private final List<Runnable> completions = new ArrayList<>();
+
+        TestHandler(Config config) {
+            super(config, null, "test");
+        }
+
+        @Override
+        protected boolean requiresLookup(Position position) {
+            return position.getValid();
+        }
+
+        @Override
+        protected void lookup(Position position, Runnable completion) {
+            completions.add(() -> {
+                position.setAddress("address");
+                completion.run();
+            });
+        }
+
+    }
+
+    private Position createPosition(long id, boolean valid) {
+        Position position = new Position();
+        position.setId(id);
+        position.setDeviceId(1);
+        position.setValid(valid);
+        return position;
+    }
+
+    @Test
+    public void testOrder() {
+
+        TestHandler handler = new TestHandler(new Config());
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound(createPosition(1, true));
+        channel.writeInbound(createPosition(2, true));
+        channel.writeInbound(createPosition(3, false));
+        assertEquals(2, handler.completions.size());
+
+        handler.completions.get(1).run();
+        channel.runPendingTasks();
+        assertNull(channel.readInbound());
+
+        handler.completions.get(0).run();
+        channel.runPendingTasks();
+        for (long id = 1; id <= 3; id++) {
+            Position position = channel.readInbound();
+            assertEquals(id, position.getId());
+        }
+        assertNull(channel.readInbound());
+
+        channel.writeInbound(createPosition(4, false));
+        assertEquals(4, ((Position) channel.readInbound()).getId());
+
+    }
+
+    @Test
+    public void testOverload() {
+
+        Config config = new Config();
+        config.setString(Keys.ENRICHMENT_MAX_DEVICE_REQUESTS, "1");
+        config.setString(Keys.ENRICHMENT_OVERLOAD_POLICY, "skip");
+        TestHandler handler = new TestHandler(config);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound(createPosition(1, true));
+        channel.writeInbound(createPosition(2, true));
+        assertEquals(1, handler.completions.size());
+
+        handler.completions.get(0).run();
+        channel.runPendingTasks();
+        Position first = channel.readInbound();
+        Position second = channel.readInbound();
+        assertEquals("address", first.getAddress());
+        assertNull(second.getAddress());
+
+    }
+
+}
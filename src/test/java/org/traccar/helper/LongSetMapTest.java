@@ -0,0 +1,44 @@
+package org.traccar.helper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongSetMapTest {
+
+    @Test
+    public void testSortedLongSet() {
+        SortedLongSet set = SortedLongSet.of(new long[] {5, 1, 3, 1, 5, 7}, 5);
+        assertEquals(3, set.size());
+        assertTrue(set.contains(1L));
+        assertTrue(set.contains(5L));
+        assertFalse(set.contains(7L));
+        assertFalse(set.contains((Object) "1"));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 5L)), set);
+    }
+
+    @Test
+    public void testLongSetMap() {
+        LongSetMap.Builder builder = new LongSetMap.Builder();
+        for (long key = 0; key < 1000; key++) {
+            for (long value = 0; value < key % 10; value++) {
+                builder.add(key * 1024, value);
+                builder.add(key * 1024, value);
+            }
+        }
+        LongSetMap map = builder.build();
+
+        assertEquals(900, map.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(key % 10, map.get(key * 1024).size());
+        }
+        assertTrue(map.get(1).isEmpty());
+        assertTrue(LongSetMap.EMPTY.get(0).isEmpty());
+    }
+
+}
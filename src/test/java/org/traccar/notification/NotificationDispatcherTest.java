@@ -0,0 +1,82 @@
+package org.traccar.notification;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDispatcherTest {
+
+    @Test
+    public void testRetry() throws Exception {
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test", 1, 10, 0, 2, 10);
+
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        dispatcher.dispatch(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new MessageException(new IOException("failed"));
+            }
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+
+        dispatcher.shutdown();
+
+    }
+
+    @Test
+    public void testNoRetryOnPermanentFailure() throws Exception {
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test", 1, 10, 0, 2, 10);
+
+        AtomicInteger attempts = new AtomicInteger();
+        dispatcher.dispatch(() -> {
+            attempts.incrementAndGet();
+            throw new MessageException("Unexpected response status 400");
+        });
+
+        Thread.sleep(200);
+        assertEquals(1, attempts.get());
+
+        dispatcher.shutdown();
+
+    }
+
+    @Test
+    public void testBoundedQueue() throws Exception {
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test", 1, 1, 0, 0, 0);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        dispatcher.dispatch(() -> {
+            started.countDown();
+            release.await();
+            completed.incrementAndGet();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(completed::incrementAndGet);
+        }
+        release.countDown();
+
+        dispatcher.shutdown();
+        for (int i = 0; i < 100 && completed.get() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, completed.get());
+
+    }
+
+}
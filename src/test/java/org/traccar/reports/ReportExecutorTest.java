@@ -0,0 +1,76 @@
+package org.traccar.reports;
+
+import org.junit.Test;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReportExecutorTest {
+
+    private ReportExecutor createExecutor() {
+        Config config = new Config();
+        config.setString(Keys.REPORT_THREADS, "4");
+        config.setString(Keys.REPORT_USER_THREADS, "2");
+        return new ReportExecutor(config);
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+
+        List<Long> deviceIds = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            deviceIds.add(i);
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Long> results = createExecutor().execute(1, deviceIds, deviceId -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep((deviceId * 7) % 5);
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return deviceId * 10;
+        });
+
+        for (int i = 0; i < deviceIds.size(); i++) {
+            assertEquals(deviceIds.get(i) * 10, (long) results.get(i));
+        }
+        assertTrue(maxRunning.get() <= 2);
+
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+
+        List<Long> deviceIds = new ArrayList<>();
+        for (long i = 1; i <= 10; i++) {
+            deviceIds.add(i);
+        }
+
+        try {
+            createExecutor().execute(1, deviceIds, deviceId -> {
+                if (deviceId == 3) {
+                    throw new SQLException("test");
+                }
+                return deviceId;
+            });
+            fail();
+        } catch (SQLException e) {
+            assertEquals("test", e.getMessage());
+        }
+
+    }
+
+}
@@ -8,6 +8,7 @@ import static org.junit.Assert.assertTrue;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -387,4 +388,132 @@ public class ReportUtilsTest extends BaseTest {
         assertEquals(1200000, itemStop.getDuration());
     }
 
+    private List<Position> tripAndStopData() throws ParseException {
+        return Arrays.asList(
+                position("2016-01-01 00:00:00.000", 0, 0),
+                position("2016-01-01 00:01:00.000", 0, 0),
+                position("2016-01-01 00:02:00.000", 10, 0),
+                position("2016-01-01 00:03:00.000", 10, 1000),
+                position("2016-01-01 00:04:00.000", 10, 2000),
+                position("2016-01-01 00:05:00.000", 0, 3000),
+                position("2016-01-01 00:06:00.000", 0, 3000),
+                position("2016-01-01 00:07:00.000", 0, 3000),
+                position("2016-01-01 00:08:00.000", 0, 3000),
+                position("2016-01-01 00:09:00.000", 0, 3000));
+    }
+
+    private List<Position> nextTripAndStopData() throws ParseException {
+        List<Position> data = new ArrayList<>(tripAndStopData());
+        data.addAll(Arrays.asList(
+                position("2016-01-01 00:10:00.000", 10, 3000),
+                position("2016-01-01 00:11:00.000", 10, 4000),
+                position("2016-01-01 00:12:00.000", 10, 5000),
+                position("2016-01-01 00:13:00.000", 0, 6000),
+                position("2016-01-01 00:14:00.000", 0, 6000),
+                position("2016-01-01 00:15:00.000", 0, 6000),
+                position("2016-01-01 00:16:00.000", 0, 6000),
+                position("2016-01-01 00:17:00.000", 0, 6000)));
+        return data;
+    }
+
+    @Test
+    public void testDetectWithoutIncomplete() throws ParseException {
+
+        List<Position> data = tripAndStopData();
+
+        TripsConfig tripsConfig = new TripsConfig(500, 300000, 180000, 900000, false, false, 0.01);
+
+        List<StopReport> stops = ReportUtils.detectTripsAndStops(
+                new TestIdentityManager(), null, data, tripsConfig, false, StopReport.class, true);
+
+        assertEquals(2, stops.size());
+        assertEquals(date("2016-01-01 00:05:00.000"), stops.get(1).getStartTime());
+
+        stops = ReportUtils.detectTripsAndStops(
+                new TestIdentityManager(), null, data, tripsConfig, false, StopReport.class, false);
+
+        assertEquals(1, stops.size());
+        assertEquals(date("2016-01-01 00:00:00.000"), stops.get(0).getStartTime());
+        assertEquals(date("2016-01-01 00:02:00.000"), stops.get(0).getEndTime());
+
+        List<TripReport> trips = ReportUtils.detectTripsAndStops(
+                new TestIdentityManager(), null, data.subList(0, 8), tripsConfig, false, TripReport.class, false);
+
+        assertTrue(trips.isEmpty());
+
+        trips = ReportUtils.detectTripsAndStops(
+                new TestIdentityManager(), null, data, tripsConfig, false, TripReport.class, false);
+
+        assertEquals(1, trips.size());
+        assertEquals(date("2016-01-01 00:02:00.000"), trips.get(0).getStartTime());
+        assertEquals(date("2016-01-01 00:05:00.000"), trips.get(0).getEndTime());
+
+    }
+
+    @Test
+    public void testDetectClosedSettledIndex() throws ParseException {
+
+        List<Position> data = tripAndStopData();
+
+        TripsConfig tripsConfig = new TripsConfig(500, 300000, 180000, 900000, false, false, 0.01);
+
+        List<TripReport> trips = new ArrayList<>();
+        assertEquals(9, ReportUtils.detectClosedTripsAndStops(
+                new TestIdentityManager(), null, data, tripsConfig, false, TripReport.class, trips));
+        assertEquals(1, trips.size());
+
+        List<StopReport> stops = new ArrayList<>();
+        assertEquals(4, ReportUtils.detectClosedTripsAndStops(
+                new TestIdentityManager(), null, data, tripsConfig, false, StopReport.class, stops));
+        assertEquals(1, stops.size());
+
+    }
+
+    @Test
+    public void testTripsStoreCheckpoint() throws ParseException {
+
+        TripsConfig tripsConfig = new TripsConfig(500, 300000, 180000, 900000, false, false, 0.01);
+
+        List<TripReport> trips = new ArrayList<>();
+        Date tripsTime = TripsStore.detectClosed(tripsConfig, tripAndStopData(),
+                date("2016-01-01 00:00:00.000"), null, false, TripReport.class, trips);
+
+        assertEquals(date("2016-01-01 00:09:00.000"), tripsTime);
+        assertEquals(1, trips.size());
+        assertEquals(date("2016-01-01 00:02:00.000"), trips.get(0).getStartTime());
+
+        trips.clear();
+        tripsTime = TripsStore.detectClosed(tripsConfig, nextTripAndStopData(),
+                tripsTime, date("2016-01-01 00:05:00.000"), false, TripReport.class, trips);
+
+        assertEquals(date("2016-01-01 00:17:00.000"), tripsTime);
+        assertEquals(1, trips.size());
+        assertEquals(date("2016-01-01 00:10:00.000"), trips.get(0).getStartTime());
+        assertEquals(date("2016-01-01 00:13:00.000"), trips.get(0).getEndTime());
+
+        // stop open since the first position is cut off, but checkpoint still advances
+        List<StopReport> stops = new ArrayList<>();
+        Date stopsTime = TripsStore.detectClosed(tripsConfig, tripAndStopData(),
+                date("2016-01-01 00:00:00.000"), null, false, StopReport.class, stops);
+
+        assertEquals(date("2016-01-01 00:04:00.000"), stopsTime);
+        assertTrue(stops.isEmpty());
+
+        stopsTime = TripsStore.detectClosed(tripsConfig, nextTripAndStopData(),
+                stopsTime, null, false, StopReport.class, stops);
+
+        assertEquals(date("2016-01-01 00:12:00.000"), stopsTime);
+        assertEquals(1, stops.size());
+        assertEquals(date("2016-01-01 00:05:00.000"), stops.get(0).getStartTime());
+        assertEquals(date("2016-01-01 00:10:00.000"), stops.get(0).getEndTime());
+
+        // items already stored are not added again
+        trips.clear();
+        TripsStore.detectClosed(tripsConfig, tripAndStopData(),
+                date("2016-01-01 00:00:00.000"), date("2016-01-01 00:05:00.000"), false, TripReport.class, trips);
+
+        assertTrue(trips.isEmpty());
+
+    }
+
 }
@@ -0,0 +1,49 @@
+package org.traccar.reports;
+
+import org.junit.Test;
+import org.traccar.model.Position;
+import org.traccar.reports.model.SummaryRollup;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SummaryStoreTest {
+
+    private Position createPosition(long id, long time, double speed, double odometer) {
+        Position position = new Position();
+        position.setId(id);
+        position.setDeviceId(1);
+        position.setFixTime(new Date(time));
+        position.setSpeed(speed);
+        position.set(Position.KEY_ODOMETER, odometer);
+        position.set(Position.KEY_IGNITION, true);
+        return position;
+    }
+
+    @Test
+    public void testMerge() {
+
+        long hour = SummaryStore.PERIOD * 100;
+
+        SummaryRollup rollup = SummaryStore.merge(null, createPosition(2, hour + 2000, 10, 200));
+        rollup = SummaryStore.merge(rollup, createPosition(3, hour + 3000, 5, 300));
+        rollup = SummaryStore.merge(rollup, createPosition(4, hour + 1000, 20, 100));
+
+        assertEquals(hour, rollup.getPeriodTime().getTime());
+        assertEquals(4, rollup.getFirstPositionId());
+        assertEquals(3, rollup.getLastPositionId());
+        assertEquals(20, rollup.getMaxSpeed(), 0.1);
+        assertEquals(4, rollup.getMaxPositionId());
+
+        Position first = SummaryStore.getFirstPosition(rollup);
+        Position last = SummaryStore.getLastPosition(rollup);
+        assertEquals(hour + 1000, first.getFixTime().getTime());
+        assertEquals(100, first.getDouble(Position.KEY_ODOMETER), 0.1);
+        assertEquals(300, last.getDouble(Position.KEY_ODOMETER), 0.1);
+        assertFalse(last.getAttributes().containsKey(Position.KEY_IGNITION));
+
+    }
+
+}
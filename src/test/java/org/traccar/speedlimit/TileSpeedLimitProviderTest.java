@@ -0,0 +1,126 @@
+package org.traccar.speedlimit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TileSpeedLimitProviderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Result implements SpeedLimitProvider.SpeedLimitProviderCallback {
+
+        private Double speedLimit;
+        private Throwable error;
+
+        @Override
+        public void onSuccess(double speedLimit) {
+            this.speedLimit = speedLimit;
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            this.error = e;
+        }
+
+    }
+
+    private static class DelayedSource implements SpeedLimitTileSource {
+
+        private final List<WaysCallback> requests = new ArrayList<>();
+
+        @Override
+        public void getWays(double south, double west, double north, double east, WaysCallback callback) {
+            requests.add(callback);
+        }
+
+    }
+
+    private static final Way WAY = new Way(50, new double[] {10.0, 20.0, 10.0, 20.005});
+
+    @Test
+    public void testDeduplication() {
+
+        DelayedSource source = new DelayedSource();
+        TileSpeedLimitProvider provider = new TileSpeedLimitProvider(source, 10, 0.01, 0, null);
+
+        Result first = new Result();
+        Result second = new Result();
+        provider.getSpeedLimit(10.0001, 20.001, first);
+        provider.getSpeedLimit(10.0002, 20.002, second);
+        assertEquals(1, source.requests.size());
+        assertNull(first.speedLimit);
+
+        source.requests.get(0).onSuccess(Collections.singletonList(WAY));
+        assertEquals(50, first.speedLimit, 0.01);
+        assertEquals(50, second.speedLimit, 0.01);
+
+        Result third = new Result();
+        provider.getSpeedLimit(10.005, 20.003, third);
+        assertEquals(1, source.requests.size());
+        assertNotNull(third.error);
+
+    }
+
+    @Test
+    public void testCacheFile() throws Exception {
+
+        String file = new File(folder.getRoot(), "tiles.db").getPath();
+
+        DelayedSource source = new DelayedSource();
+        TileSpeedLimitProvider provider = new TileSpeedLimitProvider(source, 10, 0.01, 0, file);
+        provider.getSpeedLimit(10.0001, 20.001, new Result());
+        source.requests.get(0).onSuccess(Collections.singletonList(WAY));
+        provider.close();
+
+        source = new DelayedSource();
+        provider = new TileSpeedLimitProvider(source, 10, 0.01, 0, file);
+        Result result = new Result();
+        provider.getSpeedLimit(10.0001, 20.001, result);
+        assertEquals(0, source.requests.size());
+        assertEquals(50, result.speedLimit, 0.01);
+        provider.close();
+
+    }
+
+    @Test
+    public void testOfflineFile() throws Exception {
+
+        File file = folder.newFile("ways.json");
+        Files.write(file.toPath(), ("{\"elements\":["
+                + "{\"type\":\"way\",\"tags\":{\"maxspeed\":\"90\"},"
+                + "\"geometry\":[{\"lat\":10.0,\"lon\":20.0},{\"lat\":10.0,\"lon\":20.005}]},"
+                + "{\"type\":\"way\",\"tags\":{\"maxspeed\":\"30 mph\"},"
+                + "\"geometry\":[{\"lat\":11.0,\"lon\":21.0},{\"lat\":11.001,\"lon\":21.0}]}"
+                + "]}").getBytes(StandardCharsets.UTF_8));
+
+        TileSpeedLimitProvider provider = new TileSpeedLimitProvider(
+                new FileSpeedLimitTileSource(file.getPath()), 10, 0.01, 0, null);
+
+        Result result = new Result();
+        provider.getSpeedLimit(10.0001, 20.002, result);
+        assertEquals(48.6, result.speedLimit, 0.1);
+
+        result = new Result();
+        provider.getSpeedLimit(11.0005, 21.0002, result);
+        assertEquals(26.1, result.speedLimit, 0.1);
+
+        result = new Result();
+        provider.getSpeedLimit(12, 22, result);
+        assertNotNull(result.error);
+
+    }
+
+}